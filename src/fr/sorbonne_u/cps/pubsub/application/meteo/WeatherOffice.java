@@ -4,6 +4,7 @@ import fr.sorbonne_u.cps.pubsub.base.components.PluginClient;
 import fr.sorbonne_u.components.annotations.OfferedInterfaces;
 import fr.sorbonne_u.components.annotations.RequiredInterfaces;
 import fr.sorbonne_u.cps.pubsub.interfaces.PrivilegedClientCI;
+import fr.sorbonne_u.cps.pubsub.interfaces.PublicationNotificationCI;
 import fr.sorbonne_u.cps.pubsub.interfaces.PublishingCI;
 import fr.sorbonne_u.cps.pubsub.interfaces.ReceivingCI;
 import fr.sorbonne_u.cps.pubsub.interfaces.RegistrationCI;
@@ -15,7 +16,7 @@ import fr.sorbonne_u.cps.pubsub.messages.Message;
  * Composant "Bureau météo" (CDC §3.4) implémenté comme un client pub/sub
  * basé sur greffons ({@link PluginClient}).
  */
-@OfferedInterfaces(offered = { ReceivingCI.class })
+@OfferedInterfaces(offered = { ReceivingCI.class, PublicationNotificationCI.class })
 @RequiredInterfaces(required = { RegistrationCI.class, PublishingCI.class, PrivilegedClientCI.class })
 public class WeatherOffice extends PluginClient
 {
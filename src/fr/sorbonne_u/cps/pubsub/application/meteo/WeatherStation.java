@@ -4,6 +4,7 @@ import fr.sorbonne_u.cps.pubsub.base.components.PluginClient;
 import fr.sorbonne_u.components.annotations.OfferedInterfaces;
 import fr.sorbonne_u.components.annotations.RequiredInterfaces;
 import fr.sorbonne_u.cps.pubsub.interfaces.PrivilegedClientCI;
+import fr.sorbonne_u.cps.pubsub.interfaces.PublicationNotificationCI;
 import fr.sorbonne_u.cps.pubsub.interfaces.PublishingCI;
 import fr.sorbonne_u.cps.pubsub.interfaces.ReceivingCI;
 import fr.sorbonne_u.cps.pubsub.interfaces.RegistrationCI;
@@ -21,7 +22,7 @@ import fr.sorbonne_u.cps.pubsub.messages.Message;
  * (notamment CDC §3.5.3 si besoin) sans embarquer un second composant.
  * </p>
  */
-@OfferedInterfaces(offered = { ReceivingCI.class })
+@OfferedInterfaces(offered = { ReceivingCI.class, PublicationNotificationCI.class })
 @RequiredInterfaces(required = { RegistrationCI.class, PublishingCI.class, PrivilegedClientCI.class })
 public class WeatherStation extends PluginClient
 {
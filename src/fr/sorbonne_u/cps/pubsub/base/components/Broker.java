@@ -1,17 +1,30 @@
 package fr.sorbonne_u.cps.pubsub.base.components;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import fr.sorbonne_u.components.AbstractComponent;
+import fr.sorbonne_u.components.ComponentI.FComponentTask;
 import fr.sorbonne_u.components.exceptions.ComponentShutdownException;
+import fr.sorbonne_u.cps.pubsub.base.components.BrokerConfiguration.OverflowPolicy;
+import fr.sorbonne_u.cps.pubsub.base.components.BrokerConfiguration.RateLimit;
+import fr.sorbonne_u.cps.pubsub.base.connectors.BrokerClientNotificationConnector;
 import fr.sorbonne_u.cps.pubsub.base.connectors.BrokerClientReceivingConnector;
+import fr.sorbonne_u.cps.pubsub.base.ports.BrokerNotificationOutboundPort;
 import fr.sorbonne_u.cps.pubsub.base.ports.BrokerPrivilegedInboundPort;
 import fr.sorbonne_u.cps.pubsub.base.ports.BrokerPublishingInboundPort;
 import fr.sorbonne_u.cps.pubsub.base.ports.BrokerReceptionOutboundPort;
@@ -20,12 +33,16 @@ import fr.sorbonne_u.cps.pubsub.exceptions.AlreadyExistingChannelException;
 import fr.sorbonne_u.cps.pubsub.exceptions.AlreadyRegisteredException;
 import fr.sorbonne_u.cps.pubsub.exceptions.ChannelQuotaExceededException;
 import fr.sorbonne_u.cps.pubsub.exceptions.NotSubscribedChannelException;
+import fr.sorbonne_u.cps.pubsub.exceptions.PublicationBatchTooLargeException;
+import fr.sorbonne_u.cps.pubsub.exceptions.PublicationRateExceededException;
 import fr.sorbonne_u.cps.pubsub.exceptions.UnauthorisedClientException;
 import fr.sorbonne_u.cps.pubsub.exceptions.UnknownChannelException;
 import fr.sorbonne_u.cps.pubsub.exceptions.UnknownClientException;
 import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI;
 import fr.sorbonne_u.cps.pubsub.interfaces.MessageI;
 import fr.sorbonne_u.cps.pubsub.interfaces.PrivilegedClientCI;
+import fr.sorbonne_u.cps.pubsub.interfaces.PublicationNotificationCI;
+import fr.sorbonne_u.cps.pubsub.interfaces.PublicationNotificationCI.PublicationReport;
 import fr.sorbonne_u.cps.pubsub.interfaces.PublishingCI;
 import fr.sorbonne_u.cps.pubsub.interfaces.ReceivingCI;
 import fr.sorbonne_u.cps.pubsub.interfaces.RegistrationCI;
@@ -36,6 +53,11 @@ import fr.sorbonne_u.components.annotations.RequiredInterfaces;
 
 import java.util.regex.Pattern;
 
+import fr.sorbonne_u.cps.pubsub.messages.Message;
+import fr.sorbonne_u.cps.pubsub.messages.matching.CompiledMatcher;
+import fr.sorbonne_u.cps.pubsub.messages.matching.MatcherCompiler;
+import fr.sorbonne_u.cps.pubsub.messages.matching.SubscriptionIndex;
+
 /**
  * Broker component implementing a publication/subscription system.
  *
@@ -44,7 +66,9 @@ import java.util.regex.Pattern;
  * </p>
  * <ul>
  *   <li><strong>Registration</strong>: clients register with a service class
- *       (FREE, STANDARD, PREMIUM).</li>
+ *       (FREE, STANDARD, PREMIUM); each class has its own publishing port and
+ *       reception executor, so that the publications of a class cannot delay
+ *       those of another.</li>
  *   <li><strong>FREE channels</strong>: pre-created channels {@code channel0..channelN} available to all registered clients.</li>
  *   <li><strong>Subscriptions</strong>: per-channel subscriptions associated with {@link fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI}
  *       to enable filtered delivery.</li>
@@ -52,6 +76,14 @@ import java.util.regex.Pattern;
  *   <li><strong>Privileged channels (step 2)</strong>: STANDARD/PREMIUM clients can create/destroy channels and define
  *       an {@code authorisedUsers} regular expression. Access control is enforced on both subscribe and publish.</li>
  *   <li><strong>Quotas</strong>: STANDARD and PREMIUM privileged channel creation is limited by quotas.</li>
+ *   <li><strong>Ordering</strong>: publications of a client are received in order, propagated in order of
+ *       admission on their channel, and delivered in that order through a per-subscriber mailbox, whatever
+ *       the number of threads of the pipeline executors.</li>
+ *   <li><strong>Delivery classes</strong>: delivery threads serve the subscribers of the FREE, STANDARD and
+ *       PREMIUM classes in proportion to their configured weights.</li>
+ *   <li><strong>Notifications</strong>: the outcome of each {@code asyncPublishAndNotify} publication
+ *       (delivered, failed and rejected counts) is reported once its deliveries have ended; the reports
+ *       pending for a same notification port are sent in one call.</li>
  * </ul>
  *
  * @author Bogdan Styn
@@ -62,7 +94,8 @@ import java.util.regex.Pattern;
 	PrivilegedClientCI.class
 })
 @RequiredInterfaces(required = {
-	ReceivingCI.class
+	ReceivingCI.class,
+	PublicationNotificationCI.class
 })
 public class Broker extends AbstractComponent
 {
@@ -70,20 +103,42 @@ public class Broker extends AbstractComponent
 	// Executor services URIs (audit 2)
 	// -------------------------------------------------------------------------
 
+	/** Prefix of the URIs of the reception executors, one per registration class. */
 	public static final String ES_RECEPTION_URI = "broker-reception-es";
 	public static final String ES_PROPAGATION_URI = "broker-propagation-es";
 	public static final String ES_DELIVERY_URI = "broker-delivery-es";
-
-	protected int esReceptionIndex;
+	/** Schedulable executor flushing lingering delivery batches. */
+	public static final String ES_BATCH_FLUSH_URI = "broker-batch-flush-es";
+	/** Executor sending the publication reports. */
+	public static final String ES_NOTIFICATION_URI = "broker-notification-es";
+	/** Executor compiling the matchers, apart from the propagations. */
+	public static final String ES_COMPILATION_URI = "broker-compilation-es";
+
+	/** Reception executor of each registration class, indexed by ordinal. */
+	protected final int[] esReceptionIndexes = new int[RegistrationClass.values().length];
 	protected int esPropagationIndex;
 	protected int esDeliveryIndex;
+	protected int esBatchFlushIndex = -1;
+	protected int esNotificationIndex;
+	protected int esCompilationIndex = -1;
+
+	/** Ready mailboxes of each registration class, indexed by ordinal. */
+	protected final DeliveryLane[] lanes;
+	/** Order in which the lanes are served, each appearing as often as its weight. */
+	protected final int[] laneSchedule;
+	/** Position in {@code laneSchedule} of the next delivery task. */
+	protected final AtomicLong laneTicket = new AtomicLong();
 
 	// -------------------------------------------------------------------------
 	// Concurrency control (audit 2)
 	// -------------------------------------------------------------------------
 
-	/** Protect broker shared state; never hold this lock while doing remote calls. */
-	protected final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock(true);
+	/**
+	 * Serialise structural changes of the channel registry (creation,
+	 * destruction, quotas); never taken on the publication path and never held
+	 * while doing remote calls.
+	 */
+	protected final Object registryLock = new Object();
 	// -------------------------------------------------------------------------
 	// PublishingCI async (added in latest interface)
 	// -------------------------------------------------------------------------
@@ -106,9 +161,10 @@ public class Broker extends AbstractComponent
 		String notificationInbounhdPortURI
 		) throws Exception
 	{
-		for (MessageI m : messages) {
-			this.submitPublish(publisherReceptionPortURI, channel, m, notificationInbounhdPortURI);
+		if (messages == null || messages.isEmpty()) {
+			throw new IllegalArgumentException("messages cannot be null or empty.");
 		}
+		this.submitPublish(publisherReceptionPortURI, channel, messages, notificationInbounhdPortURI);
 	}
 	// -------------------------------------------------------------------------
 	// Configuration
@@ -116,12 +172,17 @@ public class Broker extends AbstractComponent
 
 	public static final int NB_FREE_CHANNELS = 3;
 
+	/** Delivery pipeline tuning options, copied at creation and never changed. */
+	protected final BrokerConfiguration configuration;
+
 	// -------------------------------------------------------------------------
 	// Ports
 	// -------------------------------------------------------------------------
 
 	private static BrokerRegistrationInboundPort registrationPortIN;
-	private BrokerPublishingInboundPort publishingPortIN;
+	/** Publishing port of each registration class. */
+	private final Map<RegistrationClass, BrokerPublishingInboundPort> publishingPortsIN =
+		new EnumMap<>(RegistrationClass.class);
 	private static BrokerPrivilegedInboundPort privilegedPortIN;
 
 	// -------------------------------------------------------------------------
@@ -129,17 +190,32 @@ public class Broker extends AbstractComponent
 	// -------------------------------------------------------------------------
 
 	/** Registered clients: receptionPortURI -> registration class. */
-	private final Map<String, RegistrationClass> registeredClients = new HashMap<>();
+	private final Map<String, RegistrationClass> registeredClients = new ConcurrentHashMap<>();
 	/** Per-client outbound port to deliver messages. */
-	private final Map<String, BrokerReceptionOutboundPort> receptionPortsOUT = new HashMap<>();
-	/** All channels (FREE + privileged). */
-	private final Set<String> channels = new HashSet<>();
+	private final Map<String, BrokerReceptionOutboundPort> receptionPortsOUT = new ConcurrentHashMap<>();
+	/** Per-client delivery mailbox. */
+	private final Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+	/** Per-client queue of the reception stages of its publications. */
+	private final Map<String, SerialQueue> receptions = new ConcurrentHashMap<>();
+	/** Per-client publication rate limiter; absent for unlimited clients. */
+	private final Map<String, TokenBucket> publicationBuckets = new ConcurrentHashMap<>();
+	/** Outboxes of the publication reports, by notification inbound port URI. */
+	private final Map<String, NotificationOutbox> notificationOutboxes = new ConcurrentHashMap<>();
+	/** Messages refused by the rate limiters, per registration class (indexed by ordinal). */
+	protected final LongAdder[] rejectedPublications = new LongAdder[RegistrationClass.values().length];
+	/**
+	 * Canonical instances of the subscription filters: equal filters of
+	 * different subscribers share one instance, dropped with the last
+	 * subscription using it.
+	 */
+	private final Map<MessageFilterI, WeakReference<MessageFilterI>> filters =
+		new WeakHashMap<>();
 
 	/** Privileged channels metadata. */
 	private static class PrivilegedChannelInfo
 	{
 		final String ownerReceptionPortURI;
-		Pattern authorisedUsersPattern;
+		volatile Pattern authorisedUsersPattern;
 
 		PrivilegedChannelInfo(String ownerReceptionPortURI, Pattern authorisedUsersPattern)
 		{
@@ -148,47 +224,200 @@ public class Broker extends AbstractComponent
 		}
 	}
 
-	/** Privileged channels: channel -> info (owner + authorisedUsers regex). */
-	private final Map<String, PrivilegedChannelInfo> privilegedChannels = new HashMap<>();
+	/**
+	 * Per-channel state: subscriptions, privileged metadata and in-flight
+	 * bookkeeping.
+	 *
+	 * <p>
+	 * Each channel owns its state so that publications and subscription
+	 * changes on different channels never contend; the mutable parts are
+	 * guarded by the monitor of the {@code ChannelState} itself.
+	 * </p>
+	 * <p>
+	 * Subscriptions are published to the propagation stage as an immutable
+	 * array of {@link DeliveryTarget} rebuilt (copy-on-write) by each
+	 * subscription change, so that propagation reads them without locking.
+	 * </p>
+	 */
+	protected static class ChannelState
+	{
+		final String name;
+		/** Privileged channel metadata (owner + authorisedUsers regex); null for FREE channels. */
+		final PrivilegedChannelInfo privilegedInfo;
+		/** Subscriptions: client receptionPortURI -> target; guarded by {@code this}. */
+		final Map<String, DeliveryTarget> subscriptions = new HashMap<>();
+		/** Immutable snapshot of {@code subscriptions.values()}, swapped on each change. */
+		volatile DeliveryTarget[] targets = NO_TARGETS;
+		/** Matching structures used by bulk matching, rebuilt with {@code targets}. */
+		volatile ChannelMatcher matcher = NO_MATCHER;
+		/** Propagation stages of the channel, run in the order of admission. */
+		final SerialQueue propagations = new SerialQueue();
+		/** Number of messages currently in-flight (lock-free). */
+		final AtomicInteger inFlight = new AtomicInteger();
+		/** Set when the channel is drained before destruction; new publications are refused. */
+		volatile boolean closing;
+		/** Drain barrier, completed when {@code inFlight} reaches zero once {@code closing} is set. */
+		final CompletableFuture<Void> drained = new CompletableFuture<>();
+		/** Set once the channel has been removed from the registry. */
+		volatile boolean destroyed;
+
+		ChannelState(String name, PrivilegedChannelInfo privilegedInfo)
+		{
+			this.name = name;
+			this.privilegedInfo = privilegedInfo;
+		}
+
+		boolean isPrivileged()
+		{
+			return this.privilegedInfo != null;
+		}
+
+		/** Return true if {@code receptionPortURI} may subscribe/publish on this channel. */
+		boolean authorised(String receptionPortURI)
+		{
+			// FREE channels: always authorised for registered clients.
+			if (this.privilegedInfo == null) {
+				return true;
+			}
+			// Privileged channel: check authorised users regex against the receptionPortURI.
+			Pattern p = this.privilegedInfo.authorisedUsersPattern;
+			if (p == null) {
+				// null/absent regex means "all authorised" (as allowed by CI contract).
+				return true;
+			}
+			return p.matcher(receptionPortURI).matches();
+		}
+
+		/** Republish the subscriptions snapshot and its index; must be called holding {@code this}. */
+		void publishTargets()
+		{
+			if (this.subscriptions.isEmpty()) {
+				this.matcher = NO_MATCHER;
+				this.targets = NO_TARGETS;
+			} else {
+				DeliveryTarget[] ts =
+					this.subscriptions.values().toArray(new DeliveryTarget[this.subscriptions.size()]);
+				Map<MessageFilterI, ArrayList<DeliveryTarget>> byFilter = new LinkedHashMap<>();
+				for (DeliveryTarget t : ts) {
+					byFilter.computeIfAbsent(t.filter, f -> new ArrayList<>()).add(t);
+				}
+				SubscriberGroup[] groups = new SubscriberGroup[byFilter.size()];
+				int i = 0;
+				for (Map.Entry<MessageFilterI, ArrayList<DeliveryTarget>> e : byFilter.entrySet()) {
+					ArrayList<DeliveryTarget> g = e.getValue();
+					groups[i] = new SubscriberGroup(i, e.getKey(), g.toArray(new DeliveryTarget[g.size()]));
+					i++;
+				}
+				this.matcher = new ChannelMatcher(groups);
+				this.targets = ts;
+			}
+		}
 
-	/** Per-client created privileged channels count. */
-	private final Map<String, Integer> createdPrivilegedChannelsCount = new HashMap<>();
+		/**
+		 * account for a new in-flight message; return false, without
+		 * accounting for it, if the channel is being drained.
+		 */
+		boolean enter()
+		{
+			this.inFlight.incrementAndGet();
+			if (this.closing) {
+				this.leave();
+				return false;
+			}
+			return true;
+		}
+
+		/** account for the end of the pipeline of an in-flight message. */
+		void leave()
+		{
+			if (this.inFlight.decrementAndGet() == 0 && this.closing) {
+				this.drained.complete(null);
+			}
+		}
+
+		/**
+		 * refuse new publications and return the barrier completed as soon as
+		 * the last in-flight message has been delivered.
+		 */
+		CompletableFuture<Void> drain()
+		{
+			this.closing = true;
+			if (this.inFlight.get() == 0) {
+				this.drained.complete(null);
+			}
+			return this.drained;
+		}
+	}
+
+	/** Channel registry (FREE + privileged): channel -> state. */
+	private final Map<String, ChannelState> channels = new ConcurrentHashMap<>();
+
+	/** Per-client created privileged channels count; updated under {@code registryLock}. */
+	private final Map<String, Integer> createdPrivilegedChannelsCount = new ConcurrentHashMap<>();
 
 	/** Quotas by registration class. */
 	public static final int STANDARD_PRIVILEGED_CHANNEL_QUOTA = 2;
 	public static final int PREMIUM_PRIVILEGED_CHANNEL_QUOTA = 5;
 
-	/** Subscriptions: channel -> (client receptionPortURI -> filter). */
-	private final Map<String, Map<String, MessageFilterI>> subscriptions = new HashMap<>();
-
-	/** Number of messages currently in-flight per channel. */
-	private final Map<String, Integer> inFlightPerChannel = new HashMap<>();
-
 	// -------------------------------------------------------------------------
 	// Constructor
 	// -------------------------------------------------------------------------
 
 	protected Broker(int nbThreads, int nbSchedulableThreads) throws Exception
+	{
+		this(nbThreads, nbSchedulableThreads, new BrokerConfiguration());
+	}
+
+	protected Broker(
+		int nbThreads,
+		int nbSchedulableThreads,
+		BrokerConfiguration configuration
+		) throws Exception
 	{
 		super(nbThreads, nbSchedulableThreads);
+		if (configuration == null) {
+			throw new IllegalArgumentException("configuration cannot be null.");
+		}
+		// a private copy: the caller may keep changing its instance.
+		this.configuration = new BrokerConfiguration(configuration);
+		RegistrationClass[] classes = RegistrationClass.values();
+		this.lanes = new DeliveryLane[classes.length];
+		int[] weights = new int[classes.length];
+		for (RegistrationClass rc : classes) {
+			this.rejectedPublications[rc.ordinal()] = new LongAdder();
+			this.lanes[rc.ordinal()] = new DeliveryLane();
+			weights[rc.ordinal()] = this.configuration.getDeliveryWeight(rc);
+		}
+		this.laneSchedule = laneSchedule(weights);
 
 		// Create explicit thread pools for audit 2.
-		this.esReceptionIndex = this.createNewExecutorService(ES_RECEPTION_URI, Math.max(1, nbThreads), false);
+		for (RegistrationClass rc : classes) {
+			this.esReceptionIndexes[rc.ordinal()] =
+				this.createNewExecutorService(receptionExecutorURI(rc), Math.max(1, nbThreads), false);
+		}
 		this.esPropagationIndex = this.createNewExecutorService(ES_PROPAGATION_URI, Math.max(1, nbThreads), false);
 		this.esDeliveryIndex = this.createNewExecutorService(ES_DELIVERY_URI, Math.max(1, nbThreads), false);
+		if (this.configuration.isDeliveryBatching()) {
+			this.esBatchFlushIndex = this.createNewExecutorService(ES_BATCH_FLUSH_URI, 1, true);
+		}
+		this.esNotificationIndex = this.createNewExecutorService(ES_NOTIFICATION_URI, Math.max(1, nbThreads), false);
+		if (this.configuration.getMatcherCompilationThreshold() >= 0) {
+			this.esCompilationIndex = this.createNewExecutorService(ES_COMPILATION_URI, 1, false);
+		}
 
 		for (int i = 0; i < NB_FREE_CHANNELS; i++) {
 			String c = "channel" + i;
-			this.channels.add(c);
-			this.subscriptions.put(c, new HashMap<>());
-			this.inFlightPerChannel.put(c, 0);
+			this.channels.put(c, new ChannelState(c, null));
 		}
 
 		registrationPortIN = new BrokerRegistrationInboundPort(this);
 		registrationPortIN.publishPort();
 
-		publishingPortIN = new BrokerPublishingInboundPort(this);
-		publishingPortIN.publishPort();
+		for (RegistrationClass rc : classes) {
+			BrokerPublishingInboundPort p = new BrokerPublishingInboundPort(this);
+			p.publishPort();
+			this.publishingPortsIN.put(rc, p);
+		}
 
 		privilegedPortIN = new BrokerPrivilegedInboundPort(this);
 		privilegedPortIN.publishPort();
@@ -198,20 +427,344 @@ public class Broker extends AbstractComponent
 	// Internal asynchronous pipeline (audit 2)
 	// -------------------------------------------------------------------------
 
+	protected static final DeliveryTarget[] NO_TARGETS = new DeliveryTarget[0];
+	protected static final ChannelMatcher NO_MATCHER = new ChannelMatcher(new SubscriberGroup[0]);
+
+	/**
+	 * Subscribers of a channel sharing an equal (interned) filter, which is
+	 * evaluated once per message for the whole group.
+	 */
+	protected static final class SubscriberGroup
+	{
+		/** Rank of the group in its {@link ChannelMatcher}. */
+		final int id;
+		final MessageFilterI filter;
+		final DeliveryTarget[] targets;
+
+		SubscriberGroup(int id, MessageFilterI filter, DeliveryTarget[] targets)
+		{
+			this.id = id;
+			this.filter = filter;
+			this.targets = targets;
+		}
+	}
+
+	/**
+	 * Immutable matching structures of a channel: the subscriber groups, their
+	 * index and, once the channel has propagated enough messages with the
+	 * same subscriptions, a matcher compiled from their filters.
+	 */
+	protected static final class ChannelMatcher
+	{
+		final SubscriberGroup[] groups;
+		final SubscriptionIndex<SubscriberGroup> index;
+		/** Number of propagations which used this matcher, counted until its compilation is submitted. */
+		final AtomicInteger uses = new AtomicInteger();
+		/** Compiled filters of {@code groups}, null until compiled. */
+		volatile CompiledMatcher compiled;
+		/** True if the compilation failed: the filters are interpreted for good. */
+		volatile boolean failed;
+
+		ChannelMatcher(SubscriberGroup[] groups)
+		{
+			this.groups = groups;
+			this.index = new SubscriptionIndex<>(groups, g -> g.filter);
+		}
+	}
+
+	/**
+	 * Immutable subscription entry: subscriber, its mailbox and its filter.
+	 */
 	protected static class DeliveryTarget
 	{
 		final String subscriberURI;
-		final BrokerReceptionOutboundPort out;
+		final Mailbox mailbox;
 		final MessageFilterI filter;
 
-		DeliveryTarget(String subscriberURI, BrokerReceptionOutboundPort out, MessageFilterI filter)
+		DeliveryTarget(String subscriberURI, Mailbox mailbox, MessageFilterI filter)
 		{
 			this.subscriberURI = subscriberURI;
-			this.out = out;
+			this.mailbox = mailbox;
 			this.filter = filter;
 		}
 	}
 
+	/** Number of tasks a {@link SerialQueue} drain runs before yielding its thread. */
+	protected static final int SERIAL_QUOTA = 64;
+
+	/**
+	 * Tasks run one at a time, in submission order, on a shared executor
+	 * service (actor-style): the first task queued submits a drain task,
+	 * which runs the queued tasks and resubmits itself while tasks remain.
+	 */
+	protected static final class SerialQueue
+	{
+		final ConcurrentLinkedQueue<FComponentTask> tasks = new ConcurrentLinkedQueue<>();
+		/** True while a drain task is submitted or running. */
+		final AtomicBoolean scheduled = new AtomicBoolean();
+	}
+
+	/**
+	 * Lock-free token bucket limiting the publications of a client, in its
+	 * virtual scheduling form: a single timestamp, the time at which the
+	 * bucket would be full again, advanced by one emission interval per
+	 * accepted message and checked against the burst tolerance. A batch
+	 * larger than the burst is never accepted: it is refused before the
+	 * bucket is consulted.
+	 */
+	protected static final class TokenBucket
+	{
+		/** Maximum number of messages accepted at once. */
+		final int burst;
+		/** Time between two messages at the sustained rate. */
+		final long intervalNanos;
+		/** Time covered by a full bucket. */
+		final long toleranceNanos;
+		/** {@code System.nanoTime} at which the bucket is full again. */
+		final AtomicLong fullAt;
+
+		TokenBucket(RateLimit limit)
+		{
+			this.intervalNanos = Math.max(1L, (long) (1e9 / limit.getPerSecond()));
+			this.burst = limit.getBurst();
+			this.toleranceNanos = this.intervalNanos * this.burst;
+			this.fullAt = new AtomicLong(System.nanoTime());
+		}
+
+		/** take {@code n} tokens; return false, taking none, if they are not available. */
+		boolean tryAcquire(int n)
+		{
+			final long now = System.nanoTime();
+			for (;;) {
+				long full = this.fullAt.get();
+				// nanoTime values are compared by difference (they may overflow).
+				long next = (full - now < 0 ? now : full) + n * this.intervalNanos;
+				if (next - now > this.toleranceNanos) {
+					return false;
+				}
+				if (this.fullAt.compareAndSet(full, next)) {
+					return true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * A message, or a list of messages, published in one call and going
+	 * through the pipeline: its channel, the number of its deliveries not
+	 * yet ended and, when its publisher asked for it, the outcome to report.
+	 */
+	protected static final class Publication
+	{
+		final ChannelState cs;
+		/** Outbox of the report, null when no notification was requested. */
+		final NotificationOutbox notification;
+		/** Identifiers of the messages, null when no notification was requested. */
+		final long[] messageIds;
+		/**
+		 * Deliveries not yet ended, plus one share held by the propagation
+		 * stage until all deliveries have been posted.
+		 */
+		final AtomicInteger remaining = new AtomicInteger(1);
+		/** Outcome counts, only kept when a notification was requested. */
+		final AtomicInteger delivered;
+		final AtomicInteger failed;
+		/** Cause of an abnormal termination of the propagation, or null. */
+		volatile Exception error;
+
+		Publication(ChannelState cs, NotificationOutbox notification, long[] messageIds)
+		{
+			this.cs = cs;
+			this.notification = notification;
+			this.messageIds = messageIds;
+			this.delivered = notification != null ? new AtomicInteger() : null;
+			this.failed = notification != null ? new AtomicInteger() : null;
+		}
+	}
+
+	/** Delivery outcomes: dropped, or the receive call failed. */
+	protected static final int FAILED = 0;
+	/** Delivery outcomes: received by the subscriber. */
+	protected static final int DELIVERED = 1;
+	/** Delivery outcomes: refused by the filter of the subscriber. */
+	protected static final int FILTERED = 2;
+
+	/**
+	 * A message waiting in a mailbox, with its publication, its subscription
+	 * and, once drained, the outcome of its delivery.
+	 */
+	protected static final class Delivery
+	{
+		final Publication publication;
+		final DeliveryTarget target;
+		final MessageI message;
+		/** False when the filter of {@code target} is still to be evaluated. */
+		final boolean matched;
+		/** {@link #FAILED} until the drain sets it; read by the draining thread. */
+		int outcome = FAILED;
+
+		Delivery(
+			Publication publication,
+			DeliveryTarget target,
+			MessageI message,
+			boolean matched
+			)
+		{
+			this.publication = publication;
+			this.target = target;
+			this.message = message;
+			this.matched = matched;
+		}
+	}
+
+	/** Maximum number of reports sent in one notification call. */
+	protected static final int NOTIFICATION_BATCH = 256;
+
+	/**
+	 * Reports waiting to be sent to one notification inbound port, sent by at
+	 * most one task at a time: the reports queued while a call is in
+	 * progress are coalesced into the next one.
+	 */
+	protected static final class NotificationOutbox
+	{
+		/** Client which first asked for notifications on this port. */
+		final String ownerURI;
+		final BrokerNotificationOutboundPort out;
+		final ConcurrentLinkedQueue<PublicationReport> reports = new ConcurrentLinkedQueue<>();
+		/** True while a sending task is submitted or running. */
+		final AtomicBoolean scheduled = new AtomicBoolean();
+		/** Set when the owner is gone: the next sending task closes the port. */
+		volatile boolean closed;
+
+		NotificationOutbox(String ownerURI, BrokerNotificationOutboundPort out)
+		{
+			this.ownerURI = ownerURI;
+			this.out = out;
+		}
+	}
+
+	/** Mailbox states: no drain pending. */
+	protected static final int IDLE = 0;
+	/** Mailbox states: a drain is scheduled after the linger time. */
+	protected static final int LINGERING = 1;
+	/** Mailbox states: a drain task is submitted or running. */
+	protected static final int DRAINING = 2;
+
+	/**
+	 * Lock-free FIFO queue of the deliveries to one subscriber, drained by at
+	 * most one delivery task at a time: the subscriber receives its messages
+	 * in the order they were posted, and a slow subscriber holds at most one
+	 * delivery thread whatever the number of its pending messages.
+	 */
+	protected static final class Mailbox
+	{
+		final String subscriberURI;
+		final BrokerReceptionOutboundPort out;
+		final ConcurrentLinkedQueue<Delivery> pending = new ConcurrentLinkedQueue<>();
+		/** Number of pending deliveries (the queue size is not constant time). */
+		final AtomicInteger size = new AtomicInteger();
+		/** {@link #IDLE}, {@link #LINGERING} or {@link #DRAINING}. */
+		final AtomicInteger state = new AtomicInteger(IDLE);
+		/** Registration class of the subscriber, which selects its lane. */
+		volatile RegistrationClass registrationClass;
+		/** Time ({@code System.nanoTime}) at which the mailbox entered its lane. */
+		volatile long readySince;
+		/** Set when the subscriber is gone: deliveries are dropped. */
+		volatile boolean closed;
+		/** Set once an overflow has been logged. */
+		final AtomicBoolean overflowed = new AtomicBoolean();
+
+		Mailbox(String subscriberURI, BrokerReceptionOutboundPort out, RegistrationClass registrationClass)
+		{
+			this.subscriberURI = subscriberURI;
+			this.out = out;
+			this.registrationClass = registrationClass;
+		}
+	}
+
+	/**
+	 * Mailboxes of the subscribers of one registration class waiting for a
+	 * delivery thread, with the waiting time statistics of the class.
+	 */
+	protected static final class DeliveryLane
+	{
+		final ConcurrentLinkedQueue<Mailbox> ready = new ConcurrentLinkedQueue<>();
+		/** Number of drains of the mailboxes of the lane. */
+		final LongAdder drains = new LongAdder();
+		/** Total time the mailboxes of the lane waited for a delivery thread. */
+		final LongAdder waitNanos = new LongAdder();
+	}
+
+	/**
+	 * return the order in which lanes of weights {@code weights} are served:
+	 * each lane appears as many times as its weight, spread by smooth
+	 * weighted round-robin (with weights 1, 2, 4: 2 1 2 0 2 1 2), ties
+	 * favouring the heavier classes.
+	 */
+	protected static int[] laneSchedule(int[] weights)
+	{
+		int total = 0;
+		for (int w : weights) {
+			total += w;
+		}
+		int[] ret = new int[total];
+		int[] current = new int[weights.length];
+		for (int k = 0; k < total; k++) {
+			int best = -1;
+			for (int i = weights.length - 1; i >= 0; i--) {
+				current[i] += weights[i];
+				if (best < 0 || current[i] > current[best]) {
+					best = i;
+				}
+			}
+			current[best] -= total;
+			ret[k] = best;
+		}
+		return ret;
+	}
+
+	/**
+	 * run {@code task} on the executor service of index {@code executorIndex}
+	 * after the tasks previously queued in {@code q}, and never concurrently
+	 * with them.
+	 */
+	protected void runSerially(SerialQueue q, int executorIndex, FComponentTask task)
+	{
+		q.tasks.offer(task);
+		if (q.scheduled.compareAndSet(false, true)) {
+			this.runTask(executorIndex, o -> ((Broker) o).drainSerially(q, executorIndex));
+		}
+	}
+
+	/**
+	 * run at most {@link #SERIAL_QUOTA} tasks of {@code q}, then resubmit the
+	 * drain if tasks remain, letting the other queues' drains run in between.
+	 */
+	protected void drainSerially(SerialQueue q, int executorIndex)
+	{
+		for (int i = 0; i < SERIAL_QUOTA; i++) {
+			FComponentTask t = q.tasks.poll();
+			if (t == null) {
+				break;
+			}
+			try {
+				t.run(this);
+			} catch (RuntimeException e) {
+				this.logMessage("[Broker] serial task exception: " + e + "\n");
+			}
+		}
+		q.scheduled.set(false);
+		// a task queued after the last poll but before the reset found the
+		// flag set: resubmit for it.
+		if (!q.tasks.isEmpty() && q.scheduled.compareAndSet(false, true)) {
+			this.runTask(executorIndex, o -> ((Broker) o).drainSerially(q, executorIndex));
+		}
+	}
+
+	/**
+	 * submit a publication: publications of a publisher are received in the
+	 * order of the calls.
+	 */
 	protected void submitPublish(
 		String publisherReceptionPortURI,
 		String channel,
@@ -219,17 +772,89 @@ public class Broker extends AbstractComponent
 		String notificationInboundPortURI
 		)
 	{
-		final Broker self = this;
-		this.runTask(this.esReceptionIndex, o -> {
+		this.submitReception(publisherReceptionPortURI, o -> {
 			try {
 				((Broker) o).receptionStage(publisherReceptionPortURI, channel, message, notificationInboundPortURI);
 			} catch (Exception e) {
-				// TODO: abnormal termination notification
-				self.logMessage("[Broker] receptionStage exception: " + e + "\n");
+				((Broker) o).receptionFailed(publisherReceptionPortURI, channel, new MessageI[] { message },
+									  notificationInboundPortURI, e);
 			}
 		});
 	}
 
+	/**
+	 * submit a batch publication: the whole batch goes through the pipeline
+	 * as a unit (one validation, one subscribers snapshot).
+	 */
+	protected void submitPublish(
+		String publisherReceptionPortURI,
+		String channel,
+		ArrayList<MessageI> messages,
+		String notificationInboundPortURI
+		)
+	{
+		// copy now: the caller may reuse its list once the call returns.
+		final MessageI[] batch = messages.toArray(new MessageI[messages.size()]);
+		this.submitReception(publisherReceptionPortURI, o -> {
+			try {
+				((Broker) o).receptionStage(publisherReceptionPortURI, channel, batch, notificationInboundPortURI);
+			} catch (Exception e) {
+				((Broker) o).receptionFailed(publisherReceptionPortURI, channel, batch, notificationInboundPortURI, e);
+			}
+		});
+	}
+
+	/**
+	 * handle the refusal, by the reception stage, of the publication of
+	 * {@code messages}: log it, unless it exceeds the publication rate, and
+	 * report it when a notification was requested by a registered
+	 * publisher; no port is ever connected for an unknown publisher, whose
+	 * pending publications are failed by their client-side deadline.
+	 */
+	protected void receptionFailed(
+		String publisherReceptionPortURI,
+		String channel,
+		MessageI[] messages,
+		String notificationInboundPortURI,
+		Exception e
+		)
+	{
+		if (!(e instanceof PublicationRateExceededException)) {
+			// rate rejections are counted, not logged: logging would amplify the flood.
+			this.logMessage("[Broker] receptionStage exception: " + e + "\n");
+		}
+		if (notificationInboundPortURI != null) {
+			try {
+				NotificationOutbox ob = this.notificationOutbox(publisherReceptionPortURI, notificationInboundPortURI);
+				if (ob != null) {
+					this.report(ob, new PublicationReport(
+						channel, messageIds(messages), 0, 0, messages.length, e));
+				}
+			} catch (Exception ne) {
+				this.logMessage("[Broker] notification port " + notificationInboundPortURI + ": " + ne + "\n");
+			}
+		}
+	}
+
+	/**
+	 * run the reception stage {@code task} on the reception executor of the
+	 * class of {@code publisherReceptionPortURI}, after its previous
+	 * publications; publications of unknown clients are received out of
+	 * order by the FREE executor, only to be rejected.
+	 */
+	protected void submitReception(String publisherReceptionPortURI, FComponentTask task)
+	{
+		// the class of the client, not of the port it used, which may be
+		// stale while the client moves to the port of its new class.
+		RegistrationClass rc = this.registeredClients.get(publisherReceptionPortURI);
+		SerialQueue q = this.receptions.get(publisherReceptionPortURI);
+		if (rc != null && q != null) {
+			this.runSerially(q, this.esReceptionIndexes[rc.ordinal()], task);
+		} else {
+			this.runTask(this.esReceptionIndexes[RegistrationClass.FREE.ordinal()], task);
+		}
+	}
+
 	protected void receptionStage(
 		String publisherReceptionPortURI,
 		String channel,
@@ -237,96 +862,694 @@ public class Broker extends AbstractComponent
 		String notificationInboundPortURI
 		) throws Exception
 	{
-		// Lightweight validation under read lock.
-		this.stateLock.writeLock().lock();
-		try {
-			this.inFlightPerChannel.put(channel, this.inFlightPerChannel.getOrDefault(channel, 0) + 1);
-			if (!this.registeredClients.containsKey(publisherReceptionPortURI)) {
-				throw new UnknownClientException(publisherReceptionPortURI);
-			}
-			if (!this.channels.contains(channel)) {
-				throw new UnknownChannelException(channel);
-			}
-			// Enforce privileged channel auth (publish).
-			// We can call channelAuthorised which itself checks registration/channel existence.
-			if (!this.channelAuthorised(publisherReceptionPortURI, channel)) {
-				throw new UnauthorisedClientException();
+		NotificationOutbox ob = this.notificationOutbox(publisherReceptionPortURI, notificationInboundPortURI);
+		ChannelState cs = this.admitPublication(publisherReceptionPortURI, channel, 1);
+		// From now on, the pipeline works on a snapshot: the publisher keeps its instance.
+		final MessageI shared = snapshot(message);
+		final Publication p = new Publication(cs, ob, ob != null ? messageIds(shared) : null);
+
+		// Submit propagation, in the order of admission on the channel.
+		this.runSerially(cs.propagations, this.esPropagationIndex, o -> {
+			try {
+				((Broker) o).propagationStage(p, shared);
+			} catch (Exception e) {
+				this.logMessage("[Broker] propagationStage exception: " + e + "\n");
+				p.error = e;
+			} finally {
+				// release the share of the propagation stage, even in error.
+				((Broker) o).finish(p);
 			}
-		} finally {
-			this.stateLock.writeLock().unlock();
+		});
+	}
+
+	protected void receptionStage(
+		String publisherReceptionPortURI,
+		String channel,
+		MessageI[] messages,
+		String notificationInboundPortURI
+		) throws Exception
+	{
+		// The batch is validated and accounted for as a single in-flight unit.
+		NotificationOutbox ob = this.notificationOutbox(publisherReceptionPortURI, notificationInboundPortURI);
+		ChannelState cs = this.admitPublication(publisherReceptionPortURI, channel, messages.length);
+		final MessageI[] shared = new MessageI[messages.length];
+		for (int i = 0; i < messages.length; i++) {
+			shared[i] = snapshot(messages[i]);
 		}
+		final Publication p = new Publication(cs, ob, ob != null ? messageIds(shared) : null);
 
-		// Submit propagation.
-		this.runTask(this.esPropagationIndex, o -> {
+		// Submit propagation, in the order of admission on the channel.
+		this.runSerially(cs.propagations, this.esPropagationIndex, o -> {
 			try {
-				((Broker) o).propagationStage(channel, message);
+				((Broker) o).propagationStage(p, shared);
 			} catch (Exception e) {
 				this.logMessage("[Broker] propagationStage exception: " + e + "\n");
-				// ensure in-flight bookkeeping is decremented even in error.
-				((Broker) o).finishInFlight(channel);
+				p.error = e;
+			} finally {
+				// release the share of the propagation stage, even in error.
+				((Broker) o).finish(p);
 			}
 		});
 	}
 
-	protected void finishInFlight(String channel)
+	/**
+	 * validate a publication of {@code count} messages by
+	 * {@code publisherReceptionPortURI} on {@code channel} and account for it
+	 * as in-flight.
+	 *
+	 * @return				the state of {@code channel}.
+	 * @throws Exception	when the publisher is unknown, the channel unknown or being destroyed, the publisher not authorised, or over its publication rate or burst.
+	 */
+	protected ChannelState admitPublication(String publisherReceptionPortURI, String channel, int count) throws Exception
+	{
+		// Lightweight lock-free validation against the channel registry.
+		RegistrationClass rc = this.registeredClients.get(publisherReceptionPortURI);
+		if (rc == null) {
+			throw new UnknownClientException(publisherReceptionPortURI);
+		}
+		ChannelState cs = this.channels.get(channel);
+		if (cs == null) {
+			throw new UnknownChannelException(channel);
+		}
+		// Enforce privileged channel auth (publish).
+		if (!cs.authorised(publisherReceptionPortURI)) {
+			throw new UnauthorisedClientException();
+		}
+		if (!cs.enter()) {
+			// channel being destroyed (destroyChannel drains it).
+			throw new UnknownChannelException(channel);
+		}
+		// Tokens are only spent on publications that are otherwise valid.
+		TokenBucket bucket = this.publicationBuckets.get(publisherReceptionPortURI);
+		if (bucket != null) {
+			if (count > bucket.burst) {
+				cs.leave();
+				throw new PublicationBatchTooLargeException(
+					publisherReceptionPortURI + ": " + count + " messages, burst " + bucket.burst);
+			}
+			if (!bucket.tryAcquire(count)) {
+				cs.leave();
+				this.rejectedPublications[rc.ordinal()].add(count);
+				throw new PublicationRateExceededException(publisherReceptionPortURI);
+			}
+		}
+		return cs;
+	}
+
+	/**
+	 * return a frozen snapshot of {@code message} when it supports it, in
+	 * constant time: the publisher keeps modifying its own instance, and the
+	 * filters of all the subscribers share the snapshot; other
+	 * {@code MessageI} implementations are used as they are.
+	 */
+	protected static MessageI snapshot(MessageI message)
+	{
+		if (message instanceof Message) {
+			Message s = ((Message) message).share();
+			s.freeze();
+			return s;
+		}
+		return message;
+	}
+
+	/**
+	 * return the instance of the shared {@code message} handed to one
+	 * subscriber: a modifiable copy of the same message, in constant time,
+	 * which copies its properties only if the subscriber modifies it.
+	 */
+	protected static MessageI handOut(MessageI message)
+	{
+		return message instanceof Message ? ((Message) message).share() : message;
+	}
+
+	/**
+	 * return the identifiers of {@code messages}, 0 for the messages which
+	 * are not {@link Message} instances.
+	 */
+	protected static long[] messageIds(MessageI... messages)
+	{
+		long[] ret = new long[messages.length];
+		for (int i = 0; i < messages.length; i++) {
+			if (messages[i] instanceof Message) {
+				ret[i] = ((Message) messages[i]).getId();
+			}
+		}
+		return ret;
+	}
+
+	protected void finishInFlight(ChannelState cs)
+	{
+		cs.leave();
+	}
+
+	/**
+	 * release one share of the remaining count of {@code p}; the last one
+	 * ends the publication: it leaves the in-flight count of its channel and
+	 * its report, if requested, is sent.
+	 */
+	protected void finish(Publication p)
+	{
+		if (p.remaining.decrementAndGet() == 0) {
+			this.finishInFlight(p.cs);
+			if (p.notification != null) {
+				this.report(p.notification, new PublicationReport(
+					p.cs.name, p.messageIds, p.delivered.get(), p.failed.get(), 0, p.error));
+			}
+		}
+	}
+
+	/** @return true if the propagation stage evaluates the filters. */
+	protected boolean matchOnPropagation()
+	{
+		// Batching implies bulk matching: only matches are coalesced.
+		return this.configuration.isMatchOnPropagation() || this.configuration.isDeliveryBatching();
+	}
+
+	/**
+	 * post the deliveries of {@code message}; the caller releases the share
+	 * of the remaining count of {@code p} held by the propagation stage.
+	 */
+	protected void propagationStage(Publication p, MessageI message) throws Exception
+	{
+		final ChannelState cs = p.cs;
+		if (cs.destroyed) {
+			// channel destroyed (destroyChannelNow) while the message was in-flight.
+			p.error = new UnknownChannelException(cs.name);
+			return;
+		}
+
+		if (this.matchOnPropagation()) {
+			// Bulk matching: only the candidates preselected by the index
+			// are matched and only matching subscribers get delivery work.
+			final ChannelMatcher cm = this.matcher(cs);
+			final CompiledMatcher compiled = cm.compiled;
+			cm.index.forEachCandidate(message, g -> {
+				if (this.matches(g, message, compiled)) {
+					for (DeliveryTarget t : g.targets) {
+						p.remaining.incrementAndGet();
+						this.postDelivery(p, t, message, true);
+					}
+				}
+			});
+		} else {
+			// Lock-free read of the current copy-on-write snapshot of recipients.
+			for (DeliveryTarget t : cs.targets) {
+				p.remaining.incrementAndGet();
+				this.postDelivery(p, t, message, false);
+			}
+		}
+	}
+
+	/**
+	 * post the deliveries of {@code messages}; the caller releases the share
+	 * of the remaining count of {@code p} held by the propagation stage.
+	 */
+	protected void propagationStage(Publication p, MessageI[] messages) throws Exception
+	{
+		final ChannelState cs = p.cs;
+		if (cs.destroyed) {
+			// channel destroyed (destroyChannelNow) while the batch was in-flight.
+			p.error = new UnknownChannelException(cs.name);
+			return;
+		}
+
+		if (this.matchOnPropagation()) {
+			// One lock-free snapshot of the matcher for the whole batch; the
+			// mailbox drains coalesce the messages posted to a subscriber.
+			final ChannelMatcher cm = this.matcher(cs);
+			final CompiledMatcher compiled = cm.compiled;
+			for (MessageI m : messages) {
+				cm.index.forEachCandidate(m, g -> {
+					if (this.matches(g, m, compiled)) {
+						for (DeliveryTarget t : g.targets) {
+							p.remaining.incrementAndGet();
+							this.postDelivery(p, t, m, true);
+						}
+					}
+				});
+			}
+		} else {
+			// One lock-free snapshot of recipients for the whole batch.
+			DeliveryTarget[] targets = cs.targets;
+			for (MessageI m : messages) {
+				for (DeliveryTarget t : targets) {
+					p.remaining.incrementAndGet();
+					this.postDelivery(p, t, m, false);
+				}
+			}
+		}
+	}
+
+	/**
+	 * return true if {@code message} passes the filter of {@code t}; filter
+	 * exceptions are logged and count as a mismatch.
+	 */
+	protected boolean matches(DeliveryTarget t, MessageI message)
 	{
-		this.stateLock.writeLock().lock();
 		try {
-			int v = this.inFlightPerChannel.getOrDefault(channel, 0);
-			this.inFlightPerChannel.put(channel, Math.max(0, v - 1));
-		} finally {
-			this.stateLock.writeLock().unlock();
+			MessageFilterI f = t.filter;
+			return f != null && f.match(message);
+		} catch (Exception e) {
+			this.logMessage("[Broker] filter exception for " + t.subscriberURI + ": " + e + "\n");
+			return false;
 		}
 	}
 
-	protected void propagationStage(String channel, MessageI message) throws Exception
+	/**
+	 * return true if {@code message} passes the filter of {@code g}, using
+	 * {@code compiled} when not null; filter exceptions are logged and count
+	 * as a mismatch.
+	 */
+	protected boolean matches(SubscriberGroup g, MessageI message, CompiledMatcher compiled)
 	{
-		// Snapshot recipients under read lock.
-		List<DeliveryTarget> targets = new ArrayList<>();
-		this.stateLock.readLock().lock();
 		try {
-			Map<String, MessageFilterI> subs = this.subscriptions.get(channel);
-			if (subs == null) {
-				throw new UnknownChannelException(channel);
+			if (g.filter == null) {
+				return false;
 			}
-			for (Map.Entry<String, MessageFilterI> e : subs.entrySet()) {
-				String subscriberURI = e.getKey();
-				MessageFilterI filter = e.getValue();
-				BrokerReceptionOutboundPort out = this.receptionPortsOUT.get(subscriberURI);
-				if (out != null) {
-					targets.add(new DeliveryTarget(subscriberURI, out, filter));
-				}
+			if (compiled != null && message instanceof Message) {
+				return compiled.match(g.id, (Message) message);
 			}
-		} finally {
-			this.stateLock.readLock().unlock();
+			return g.filter.match(message);
+		} catch (Exception e) {
+			this.logMessage("[Broker] filter exception for " + g.targets[0].subscriberURI + ": " + e + "\n");
+			return false;
 		}
+	}
 
-		// Submit deliveries.
-		final int expected = targets.size();
-		if (expected == 0) {
-			// no recipients => end of pipeline
-			this.finishInFlight(channel);
+	/**
+	 * return the current matcher of {@code cs}, submitting the compilation
+	 * of its filters once it has been used for the configured number of
+	 * propagations; the filters are interpreted until the compiled matcher
+	 * is set, and for good when the compilation fails.
+	 */
+	protected ChannelMatcher matcher(ChannelState cs)
+	{
+		ChannelMatcher cm = cs.matcher;
+		int threshold = this.configuration.getMatcherCompilationThreshold();
+		// the count stops once the threshold is passed: it never wraps.
+		if (threshold >= 0 && cm.groups.length > 0 && cm.compiled == null && !cm.failed
+				&& cm.uses.get() <= threshold && cm.uses.getAndIncrement() == threshold) {
+			// code generation and class loading would stall the propagations.
+			this.runTask(this.esCompilationIndex, o -> ((Broker) o).compile(cs, cm));
+		}
+		return cm;
+	}
+
+	/**
+	 * compile the filters of {@code cm}, unless {@code cs} uses another
+	 * matcher since; run by the compilation executor.
+	 */
+	protected void compile(ChannelState cs, ChannelMatcher cm)
+	{
+		if (cs.matcher != cm) {
+			// subscriptions changed: the new matcher counts its own uses.
 			return;
 		}
-		final java.util.concurrent.atomic.AtomicInteger remaining = new java.util.concurrent.atomic.AtomicInteger(expected);
-		for (DeliveryTarget t : targets) {
-			this.runTask(this.esDeliveryIndex, o -> {
-				try {
-					MessageFilterI f = t.filter;
-					if (f != null && f.match(message)) {
-						t.out.receive(channel, message);
+		MessageFilterI[] filters = new MessageFilterI[cm.groups.length];
+		for (int i = 0; i < filters.length; i++) {
+			filters[i] = cm.groups[i].filter;
+		}
+		try {
+			cm.compiled = MatcherCompiler.compile(filters);
+		} catch (Exception | LinkageError e) {
+			cm.failed = true;
+			this.logMessage("[Broker] matcher compilation failed on " + cs.name + ": " + e + "\n");
+		}
+	}
+
+	/**
+	 * post the delivery of {@code message} to {@code t} in the mailbox of its
+	 * subscriber, applying the overflow policy when the mailbox is full, and
+	 * schedule its drain; when {@code matched} is false, the filter is
+	 * evaluated by the drain.
+	 */
+	protected void postDelivery(
+		Publication p,
+		DeliveryTarget t,
+		MessageI message,
+		boolean matched
+		)
+	{
+		final Mailbox mb = t.mailbox;
+		final Delivery d = new Delivery(p, t, message, matched);
+		if (mb.closed) {
+			this.release(d);
+			return;
+		}
+		final int capacity = this.configuration.getMailboxCapacity();
+		if (mb.size.incrementAndGet() > capacity && capacity > 0) {
+			OverflowPolicy policy = this.configuration.getOverflowPolicy();
+			if (mb.overflowed.compareAndSet(false, true)) {
+				this.logMessage("[Broker] mailbox of " + mb.subscriberURI + " full, " + policy + "\n");
+			}
+			switch (policy) {
+				case DROP_OLDEST:
+					Delivery oldest = mb.pending.poll();
+					if (oldest != null) {
+						mb.size.decrementAndGet();
+						this.release(oldest);
 					}
-				} catch (Exception e) {
-					this.logMessage("[Broker] delivery exception to " + t.subscriberURI + ": " + e + "\n");
-				} finally {
-					if (remaining.decrementAndGet() == 0) {
-						((Broker) o).finishInFlight(channel);
+					break;
+				case DROP_NEWEST:
+					mb.size.decrementAndGet();
+					this.release(d);
+					return;
+				default:
+					mb.size.decrementAndGet();
+					this.release(d);
+					this.disconnect(mb);
+					return;
+			}
+		}
+		mb.pending.offer(d);
+		if (mb.closed) {
+			// closed meanwhile: nobody else will drain it.
+			this.discard(mb);
+			return;
+		}
+		this.scheduleDrain(mb);
+	}
+
+	/**
+	 * schedule the drain of {@code mb} unless one is pending: at once when
+	 * a full delivery batch is waiting or batching is disabled, otherwise
+	 * after the linger time.
+	 */
+	protected void scheduleDrain(Mailbox mb)
+	{
+		final int max = this.configuration.getDeliveryBatchSize();
+		final long linger = this.configuration.getDeliveryLingerMillis();
+		if (max > 1 && linger > 0 && mb.size.get() < max) {
+			if (mb.state.compareAndSet(IDLE, LINGERING)) {
+				this.scheduleTask(
+					this.esBatchFlushIndex,
+					o -> ((Broker) o).lingerExpired(mb),
+					linger,
+					TimeUnit.MILLISECONDS);
+			}
+		} else if (mb.state.compareAndSet(IDLE, DRAINING) || mb.state.compareAndSet(LINGERING, DRAINING)) {
+			// a lingering drain is overtaken; its timer will find DRAINING.
+			this.dispatch(mb);
+		}
+	}
+
+	/** submit the drain of {@code mb} when its linger time expires. */
+	protected void lingerExpired(Mailbox mb)
+	{
+		if (mb.state.compareAndSet(LINGERING, DRAINING)) {
+			this.dispatch(mb);
+		}
+	}
+
+	/**
+	 * put {@code mb}, which has messages to deliver, in the lane of its
+	 * subscriber's class and submit a delivery task, which will serve the
+	 * lane its turn designates.
+	 */
+	protected void dispatch(Mailbox mb)
+	{
+		mb.readySince = System.nanoTime();
+		this.lanes[mb.registrationClass.ordinal()].ready.offer(mb);
+		this.runTask(this.esDeliveryIndex, o -> ((Broker) o).serveLane());
+	}
+
+	/**
+	 * drain one ready mailbox, taken from the lane designated by the lane
+	 * schedule or, when that lane is empty, from the heaviest non-empty
+	 * lane; there is one such task per ready mailbox.
+	 */
+	protected void serveLane()
+	{
+		int turn = this.laneSchedule[(int) (this.laneTicket.getAndIncrement() % this.laneSchedule.length)];
+		DeliveryLane lane = this.lanes[turn];
+		Mailbox mb = lane.ready.poll();
+		for (int i = this.lanes.length - 1; mb == null && i >= 0; i--) {
+			lane = this.lanes[i];
+			mb = lane.ready.poll();
+		}
+		if (mb != null) {
+			lane.drains.increment();
+			lane.waitNanos.add(System.nanoTime() - mb.readySince);
+			this.drainMailbox(mb);
+		}
+	}
+
+	/**
+	 * return the mean time, in milliseconds, the subscribers of class
+	 * {@code rc} with messages to deliver waited for a delivery thread.
+	 *
+	 * @param rc	registration class.
+	 * @return		the mean waiting time, 0 if no delivery took place.
+	 */
+	public double meanDeliveryWaitMillis(RegistrationClass rc)
+	{
+		DeliveryLane lane = this.lanes[rc.ordinal()];
+		long n = lane.drains.sum();
+		return n == 0 ? 0.0 : lane.waitNanos.sum() / (n * 1e6);
+	}
+
+	/**
+	 * deliver the oldest messages of {@code mb}, at most the delivery batch
+	 * size, with one {@code receive} call per run of messages of the same
+	 * channel, then reschedule the drain if messages remain, letting the
+	 * other subscribers' drains run in between.
+	 */
+	protected void drainMailbox(Mailbox mb)
+	{
+		final int max = this.configuration.getDeliveryBatchSize();
+		final Delivery[] run = new Delivery[max];
+		int n = 0;
+		Delivery d;
+		while (n < max && (d = mb.pending.poll()) != null) {
+			run[n++] = d;
+		}
+		mb.size.addAndGet(-n);
+		try {
+			if (!mb.closed) {
+				this.deliver(mb, run, n);
+			}
+		} finally {
+			for (int i = 0; i < n; i++) {
+				this.release(run[i]);
+			}
+			mb.state.set(IDLE);
+			if (mb.closed) {
+				this.discard(mb);
+			} else if (!mb.pending.isEmpty()) {
+				this.scheduleDrain(mb);
+			}
+		}
+	}
+
+	/**
+	 * deliver the {@code n} first deliveries of {@code run} to the
+	 * subscriber of {@code mb}, keeping their order, and set their outcome.
+	 */
+	protected void deliver(Mailbox mb, Delivery[] run, int n)
+	{
+		final MessageI[] messages = new MessageI[n];
+		int i = 0;
+		while (i < n) {
+			final int first = i;
+			ChannelState cs = run[i].publication.cs;
+			int k = 0;
+			for (; i < n && run[i].publication.cs == cs; i++) {
+				if (run[i].matched || this.matches(run[i].target, run[i].message)) {
+					messages[k++] = handOut(run[i].message);
+				} else {
+					run[i].outcome = FILTERED;
+				}
+			}
+			try {
+				if (k == 1) {
+					mb.out.receive(cs.name, messages[0]);
+				} else if (k > 1) {
+					mb.out.receive(cs.name, Arrays.copyOf(messages, k));
+				}
+				for (int j = first; j < i; j++) {
+					if (run[j].outcome != FILTERED) {
+						run[j].outcome = DELIVERED;
 					}
 				}
-			});
+			} catch (Exception e) {
+				this.logMessage("[Broker] delivery exception to " + mb.subscriberURI + ": " + e + "\n");
+			}
+		}
+	}
+
+	/** drop the pending deliveries of the closed mailbox {@code mb}. */
+	protected void discard(Mailbox mb)
+	{
+		Delivery d;
+		while ((d = mb.pending.poll()) != null) {
+			mb.size.decrementAndGet();
+			this.release(d);
 		}
 	}
 
+	/**
+	 * close the mailbox of a subscriber which cannot keep up and unregister
+	 * it (overflow policy {@code DISCONNECT}).
+	 */
+	protected void disconnect(Mailbox mb)
+	{
+		mb.closed = true;
+		this.discard(mb);
+		this.runTask(o -> {
+			try {
+				((Broker) o).unregister(mb.subscriberURI);
+			} catch (UnknownClientException e) {
+				// already unregistered.
+			} catch (Exception e) {
+				this.logMessage("[Broker] disconnection of " + mb.subscriberURI + " failed: " + e + "\n");
+			}
+		});
+	}
+
+	/** account for the end of the delivery, or the drop, of {@code d}. */
+	protected void release(Delivery d)
+	{
+		Publication p = d.publication;
+		if (p.notification != null) {
+			if (d.outcome == DELIVERED) {
+				p.delivered.incrementAndGet();
+			} else if (d.outcome == FAILED) {
+				p.failed.incrementAndGet();
+			}
+		}
+		this.finish(p);
+	}
+
+	// -------------------------------------------------------------------------
+	// Publication notifications
+	// -------------------------------------------------------------------------
+
+	/**
+	 * return the outbox of the reports to {@code notificationInboundPortURI},
+	 * connecting a port to it on first use.
+	 *
+	 * @return				the outbox, or null when no notification is requested or the publisher is unknown.
+	 * @throws Exception	when the notification port cannot be connected.
+	 */
+	protected NotificationOutbox notificationOutbox(
+		String publisherReceptionPortURI,
+		String notificationInboundPortURI
+		) throws Exception
+	{
+		if (notificationInboundPortURI == null
+				|| !this.registeredClients.containsKey(publisherReceptionPortURI)) {
+			return null;
+		}
+		NotificationOutbox ob = this.notificationOutboxes.get(notificationInboundPortURI);
+		if (ob != null) {
+			return ob;
+		}
+		synchronized (this.notificationOutboxes) {
+			ob = this.notificationOutboxes.get(notificationInboundPortURI);
+			if (ob == null) {
+				ob = new NotificationOutbox(
+					publisherReceptionPortURI, this.connectNotificationPort(notificationInboundPortURI));
+				this.notificationOutboxes.put(notificationInboundPortURI, ob);
+			}
+			return ob;
+		}
+	}
+
+	/**
+	 * return a new port connected to {@code notificationInboundPortURI}.
+	 *
+	 * @throws Exception	when the port cannot be connected.
+	 */
+	protected BrokerNotificationOutboundPort connectNotificationPort(String notificationInboundPortURI)
+	throws Exception
+	{
+		BrokerNotificationOutboundPort out = new BrokerNotificationOutboundPort(this);
+		out.publishPort();
+		try {
+			this.doPortConnection(
+				out.getPortURI(),
+				notificationInboundPortURI,
+				BrokerClientNotificationConnector.class.getCanonicalName());
+		} catch (Exception e) {
+			try { out.unpublishPort(); } catch (Exception ignored) {}
+			try { out.destroyPort(); } catch (Exception ignored) {}
+			throw e;
+		}
+		return out;
+	}
+
+	/** queue {@code report} in {@code ob} and submit its sending unless pending. */
+	protected void report(NotificationOutbox ob, PublicationReport report)
+	{
+		ob.reports.offer(report);
+		if (ob.scheduled.compareAndSet(false, true)) {
+			this.runTask(this.esNotificationIndex, o -> ((Broker) o).sendNotifications(ob));
+		}
+	}
+
+	/**
+	 * send the reports queued in {@code ob}, at most
+	 * {@link #NOTIFICATION_BATCH} in one call, then resubmit the sending if
+	 * reports remain; once {@code ob} is closed and its queued reports sent,
+	 * close its port instead.
+	 */
+	protected void sendNotifications(NotificationOutbox ob)
+	{
+		// read first: the reports queued before the closing are all sent.
+		boolean closed = ob.closed;
+		if (closed && ob.reports.isEmpty()) {
+			// scheduled stays set: no further sending task.
+			this.closeNotificationPort(ob);
+			return;
+		}
+		ArrayList<PublicationReport> rs = new ArrayList<>();
+		PublicationReport r;
+		while (rs.size() < NOTIFICATION_BATCH && (r = ob.reports.poll()) != null) {
+			rs.add(r);
+		}
+		if (!rs.isEmpty()) {
+			try {
+				ob.out.notifyPublications(rs.toArray(new PublicationReport[rs.size()]));
+			} catch (Exception e) {
+				this.logMessage("[Broker] notification exception to " + ob.ownerURI + ": " + e + "\n");
+			}
+		}
+		ob.scheduled.set(false);
+		if ((ob.closed || !ob.reports.isEmpty()) && ob.scheduled.compareAndSet(false, true)) {
+			this.runTask(this.esNotificationIndex, o -> ((Broker) o).sendNotifications(ob));
+		}
+	}
+
+	/**
+	 * close the outboxes of the reports asked by {@code receptionPortURI};
+	 * their ports are closed by their sending task, after the reports
+	 * already queued.
+	 */
+	protected void closeNotificationOutboxes(String receptionPortURI)
+	{
+		for (NotificationOutbox ob : this.notificationOutboxes.values()) {
+			if (ob.ownerURI.equals(receptionPortURI)) {
+				this.notificationOutboxes.values().remove(ob);
+				ob.closed = true;
+				if (ob.scheduled.compareAndSet(false, true)) {
+					this.runTask(this.esNotificationIndex, o -> ((Broker) o).sendNotifications(ob));
+				}
+			}
+		}
+	}
+
+	/** disconnect and destroy the port of {@code ob}. */
+	protected void closeNotificationPort(NotificationOutbox ob)
+	{
+		try {
+			if (ob.out.connected()) {
+				this.doPortDisconnection(ob.out.getPortURI());
+			}
+		} catch (Exception ignored) {}
+		try { ob.out.unpublishPort(); } catch (Exception ignored) {}
+		try { ob.out.destroyPort(); } catch (Exception ignored) {}
+	}
+
 	// -------------------------------------------------------------------------
 	// Component life cycle
 	// -------------------------------------------------------------------------
@@ -334,6 +1557,15 @@ public class Broker extends AbstractComponent
 	@Override
 	public synchronized void shutdown() throws ComponentShutdownException
 	{
+		StringBuilder sb = new StringBuilder("[Broker] mean delivery wait (ms):");
+		for (RegistrationClass rc : RegistrationClass.values()) {
+			sb.append(' ').append(rc).append('=').append(String.format("%.3f", this.meanDeliveryWaitMillis(rc)));
+		}
+		sb.append("\n[Broker] publications over rate:");
+		for (RegistrationClass rc : RegistrationClass.values()) {
+			sb.append(' ').append(rc).append('=').append(this.rejectedPublications(rc));
+		}
+		this.logMessage(sb.append('\n').toString());
 		try {
 			// Disconnect/unpublish per-client outbound ports.
 			for (BrokerReceptionOutboundPort out : this.receptionPortsOUT.values()) {
@@ -346,14 +1578,19 @@ public class Broker extends AbstractComponent
 				try { out.destroyPort(); } catch (Exception ignored) {}
 			}
 			this.receptionPortsOUT.clear();
+			for (NotificationOutbox ob : this.notificationOutboxes.values()) {
+				ob.closed = true;
+				this.closeNotificationPort(ob);
+			}
+			this.notificationOutboxes.clear();
 
 			// Unpublish broker inbound ports.
-			try {
-                if (this.publishingPortIN != null) {
-                    this.publishingPortIN.unpublishPort();
-                    this.publishingPortIN.destroyPort();
-                }
-            } catch (Exception ignored) {}
+			for (BrokerPublishingInboundPort p : this.publishingPortsIN.values()) {
+				try {
+					p.unpublishPort();
+					p.destroyPort();
+				} catch (Exception ignored) {}
+			}
 			try {
                 if (registrationPortIN != null) {
                     registrationPortIN.unpublishPort();
@@ -381,9 +1618,21 @@ public class Broker extends AbstractComponent
 		return registrationPortIN.getPortURI();
 	}
 
-	public String publishingPortURI() throws Exception
+	/**
+	 * return the URI of the publishing port of the clients of class {@code rc}.
+	 */
+	public String publishingPortURI(RegistrationClass rc) throws Exception
 	{
-		return publishingPortIN.getPortURI();
+		return this.publishingPortsIN.get(rc).getPortURI();
+	}
+
+	/**
+	 * return the URI of the reception executor of the publications of the
+	 * clients of class {@code rc}.
+	 */
+	public static String receptionExecutorURI(RegistrationClass rc)
+	{
+		return ES_RECEPTION_URI + "-" + rc;
 	}
 
 	public static String privilegedPortURI() throws Exception
@@ -395,6 +1644,32 @@ public class Broker extends AbstractComponent
 	// Registration (RegistrationCI)
 	// -------------------------------------------------------------------------
 
+	/**
+	 * install a full rate limiter for the client {@code receptionPortURI} of
+	 * class {@code rc}, or remove it if the client is unlimited.
+	 */
+	protected void setPublicationBucket(String receptionPortURI, RegistrationClass rc)
+	{
+		RateLimit limit = this.configuration.getPublicationRate(receptionPortURI, rc);
+		if (limit == null) {
+			this.publicationBuckets.remove(receptionPortURI);
+		} else {
+			this.publicationBuckets.put(receptionPortURI, new TokenBucket(limit));
+		}
+	}
+
+	/**
+	 * return the number of messages of the clients of class {@code rc}
+	 * refused for exceeding their publication rate.
+	 *
+	 * @param rc	registration class.
+	 * @return		the number of refused messages.
+	 */
+	public long rejectedPublications(RegistrationClass rc)
+	{
+		return this.rejectedPublications[rc.ordinal()].sum();
+	}
+
 	public boolean registered(String receptionPortURI) throws Exception
 	{
 		return this.registeredClients.containsKey(receptionPortURI);
@@ -413,13 +1688,11 @@ public class Broker extends AbstractComponent
 		if (rc == null) {
 			throw new IllegalArgumentException("rc cannot be null.");
 		}
-		if (this.registered(receptionPortURI)) {
+		// Accepting all service classes (FREE, STANDARD, PREMIUM)
+		if (this.registeredClients.putIfAbsent(receptionPortURI, rc) != null) {
 			throw new AlreadyRegisteredException();
 		}
 
-		// Accepting all service classes (FREE, STANDARD, PREMIUM)
-		this.registeredClients.put(receptionPortURI, rc);
-
 		// Initializing privileged quota bookkeeping
 		this.createdPrivilegedChannelsCount.putIfAbsent(receptionPortURI, 0);
 
@@ -431,9 +1704,12 @@ public class Broker extends AbstractComponent
 			out.getPortURI(),
 			receptionPortURI,
 			BrokerClientReceivingConnector.class.getCanonicalName());
+		this.mailboxes.put(receptionPortURI, new Mailbox(receptionPortURI, out, rc));
+		this.setPublicationBucket(receptionPortURI, rc);
+		this.receptions.put(receptionPortURI, new SerialQueue());
 		this.receptionPortsOUT.put(receptionPortURI, out);
 
-		return publishingPortIN.getPortURI();
+		return this.publishingPortURI(rc);
 	}
 
 	public String modifyServiceClass(String receptionPortURI, RegistrationClass rc) throws Exception
@@ -446,7 +1722,13 @@ public class Broker extends AbstractComponent
 		}
 		// Allowing service class upgrade/downgrade
 		this.registeredClients.put(receptionPortURI, rc);
-		return publishingPortIN.getPortURI();
+		Mailbox mb = this.mailboxes.get(receptionPortURI);
+		if (mb != null) {
+			// takes effect the next time the mailbox enters a lane.
+			mb.registrationClass = rc;
+		}
+		this.setPublicationBucket(receptionPortURI, rc);
+		return this.publishingPortURI(rc);
 	}
 
 	public void unregister(String receptionPortURI) throws Exception
@@ -456,9 +1738,23 @@ public class Broker extends AbstractComponent
 		}
 
 		// Removing subscriptions
-		for (Map<String, MessageFilterI> subs : this.subscriptions.values()) {
-			subs.remove(receptionPortURI);
+		for (ChannelState cs : this.channels.values()) {
+			synchronized (cs) {
+				if (cs.subscriptions.remove(receptionPortURI) != null) {
+					cs.publishTargets();
+				}
+			}
+		}
+
+		// Dropping the pending deliveries
+		Mailbox mb = this.mailboxes.remove(receptionPortURI);
+		if (mb != null) {
+			mb.closed = true;
+			this.discard(mb);
 		}
+		this.receptions.remove(receptionPortURI);
+		this.publicationBuckets.remove(receptionPortURI);
+		this.closeNotificationOutboxes(receptionPortURI);
 
 		// Disconnecting and removing outbound port
 		BrokerReceptionOutboundPort out = this.receptionPortsOUT.remove(receptionPortURI);
@@ -483,100 +1779,112 @@ public class Broker extends AbstractComponent
 
 	public boolean channelExist(String channel) throws Exception
 	{
-		return this.channels.contains(channel);
+		return this.channels.containsKey(channel);
 	}
 
-	public boolean channelAuthorised(String receptionPortURI, String channel) throws Exception
+	/**
+	 * return the state of {@code channel}, checking that {@code receptionPortURI}
+	 * is registered and that the channel exists.
+	 *
+	 * @param receptionPortURI	URI of the inbound port offering the component interface {@code ReceivingCI}.
+	 * @param channel			name of the channel.
+	 * @return					the state of {@code channel}.
+	 * @throws Exception		<i>to do</i>.
+	 */
+	protected ChannelState channelState(String receptionPortURI, String channel) throws Exception
 	{
 		if (!this.registered(receptionPortURI)) {
 			throw new UnknownClientException(receptionPortURI);
 		}
-		if (!this.channelExist(channel)) {
+		ChannelState cs = this.channels.get(channel);
+		if (cs == null) {
 			throw new UnknownChannelException(channel);
 		}
+		return cs;
+	}
 
-		// FREE channels: always authorised for registered clients.
-		if (!this.privilegedChannels.containsKey(channel)) {
-			return true;
-		}
-
-		// Privileged channel: check authorised users regex against the receptionPortURI.
-		PrivilegedChannelInfo info = this.privilegedChannels.get(channel);
-		if (info == null || info.authorisedUsersPattern == null) {
-			// null/absent regex means "all authorised" (as allowed by CI contract).
-			return true;
-		}
-		return info.authorisedUsersPattern.matcher(receptionPortURI).matches();
+	public boolean channelAuthorised(String receptionPortURI, String channel) throws Exception
+	{
+		return this.channelState(receptionPortURI, channel).authorised(receptionPortURI);
 	}
 
 	public boolean subscribed(String receptionPortURI, String channel) throws Exception
 	{
-		if (!this.registered(receptionPortURI)) {
-			throw new UnknownClientException(receptionPortURI);
-		}
-		if (!this.channelExist(channel)) {
-			throw new UnknownChannelException(channel);
+		ChannelState cs = this.channelState(receptionPortURI, channel);
+		synchronized (cs) {
+			return cs.subscriptions.containsKey(receptionPortURI);
 		}
-		return this.subscriptions.get(channel).containsKey(receptionPortURI);
 	}
 
 	public void subscribe(String receptionPortURI, String channel, MessageFilterI filter) throws Exception
 	{
-		this.stateLock.writeLock().lock();
-		try {
 		if (filter == null) {
 			throw new IllegalArgumentException("filter cannot be null.");
 		}
-		if (!this.channelAuthorised(receptionPortURI, channel)) {
+		ChannelState cs = this.channelState(receptionPortURI, channel);
+		if (!cs.authorised(receptionPortURI)) {
 			throw new UnauthorisedClientException();
 		}
-		this.subscriptions.get(channel).put(receptionPortURI, filter);
-		} finally {
-			this.stateLock.writeLock().unlock();
+		Mailbox mb = this.mailboxes.get(receptionPortURI);
+		if (mb == null) {
+			throw new UnknownClientException(receptionPortURI);
+		}
+		synchronized (cs) {
+			if (cs.destroyed) {
+				throw new UnknownChannelException(channel);
+			}
+			cs.subscriptions.put(
+				receptionPortURI,
+				new DeliveryTarget(receptionPortURI, mb, this.intern(filter)));
+			cs.publishTargets();
 		}
 	}
 
 	public void unsubscribe(String receptionPortURI, String channel) throws Exception
 	{
-		this.stateLock.writeLock().lock();
-		try {
-		if (!this.registered(receptionPortURI)) {
-			throw new UnknownClientException(receptionPortURI);
-		}
-		if (!this.channelExist(channel)) {
-			throw new UnknownChannelException(channel);
-		}
-		if (!this.subscriptions.get(channel).containsKey(receptionPortURI)) {
-			throw new NotSubscribedChannelException(
-				"Client " + receptionPortURI + " not subscribed to " + channel);
-		}
-		this.subscriptions.get(channel).remove(receptionPortURI);
-		} finally {
-			this.stateLock.writeLock().unlock();
+		ChannelState cs = this.channelState(receptionPortURI, channel);
+		synchronized (cs) {
+			if (cs.subscriptions.remove(receptionPortURI) == null) {
+				throw new NotSubscribedChannelException(
+					"Client " + receptionPortURI + " not subscribed to " + channel);
+			}
+			cs.publishTargets();
 		}
 	}
 
 	public boolean modifyFilter(String receptionPortURI, String channel, MessageFilterI filter) throws Exception
 	{
-		this.stateLock.writeLock().lock();
-		try {
 		if (filter == null) {
 			throw new IllegalArgumentException("filter cannot be null.");
 		}
-		if (!this.registered(receptionPortURI)) {
-			throw new UnknownClientException(receptionPortURI);
-		}
-		if (!this.channelExist(channel)) {
-			throw new UnknownChannelException(channel);
-		}
-		if (!this.subscriptions.get(channel).containsKey(receptionPortURI)) {
-			throw new NotSubscribedChannelException(
-				"Client " + receptionPortURI + " not subscribed to " + channel);
+		ChannelState cs = this.channelState(receptionPortURI, channel);
+		synchronized (cs) {
+			DeliveryTarget current = cs.subscriptions.get(receptionPortURI);
+			if (current == null) {
+				throw new NotSubscribedChannelException(
+					"Client " + receptionPortURI + " not subscribed to " + channel);
+			}
+			cs.subscriptions.put(
+				receptionPortURI,
+				new DeliveryTarget(receptionPortURI, current.mailbox, this.intern(filter)));
+			cs.publishTargets();
 		}
-		this.subscriptions.get(channel).put(receptionPortURI, filter);
 		return true;
-		} finally {
-			this.stateLock.writeLock().unlock();
+	}
+
+	/**
+	 * return the canonical instance of the filters equal to {@code filter}.
+	 */
+	protected MessageFilterI intern(MessageFilterI filter)
+	{
+		synchronized (this.filters) {
+			WeakReference<MessageFilterI> ref = this.filters.get(filter);
+			MessageFilterI canonical = ref != null ? ref.get() : null;
+			if (canonical == null) {
+				this.filters.put(filter, new WeakReference<>(filter));
+				canonical = filter;
+			}
+			return canonical;
 		}
 	}
 
@@ -595,9 +1903,7 @@ public class Broker extends AbstractComponent
 		if (messages == null || messages.isEmpty()) {
 			throw new IllegalArgumentException("messages cannot be null or empty.");
 		}
-		for (MessageI m : messages) {
-			this.submitPublish(publisherReceptionPortURI, channel, m, null);
-		}
+		this.submitPublish(publisherReceptionPortURI, channel, messages, null);
 	}
 
 	// -------------------------------------------------------------------------
@@ -606,14 +1912,8 @@ public class Broker extends AbstractComponent
 
 	public boolean hasCreatedChannel(String receptionPortURI, String channel) throws Exception
 	{
-		if (!this.registered(receptionPortURI)) {
-			throw new UnknownClientException(receptionPortURI);
-		}
-		if (!this.channelExist(channel)) {
-			throw new UnknownChannelException(channel);
-		}
-		PrivilegedChannelInfo info = this.privilegedChannels.get(channel);
-		return info != null && info.ownerReceptionPortURI.equals(receptionPortURI);
+		ChannelState cs = this.channelState(receptionPortURI, channel);
+		return cs.isPrivileged() && cs.privilegedInfo.ownerReceptionPortURI.equals(receptionPortURI);
 	}
 
 	public boolean channelQuotaReached(String receptionPortURI) throws Exception
@@ -638,8 +1938,7 @@ public class Broker extends AbstractComponent
 
 	public void createChannel(String receptionPortURI, String channel, String autorisedUsers) throws Exception
 	{
-		this.stateLock.writeLock().lock();
-		try {
+		synchronized (this.registryLock) {
 		if (!this.registered(receptionPortURI)) {
 			throw new UnknownClientException(receptionPortURI);
 		}
@@ -663,15 +1962,12 @@ public class Broker extends AbstractComponent
 			p = Pattern.compile(autorisedUsers);
 		}
 
-		this.channels.add(channel);
-		this.subscriptions.put(channel, new HashMap<>());
-		this.inFlightPerChannel.put(channel, 0);
-		this.privilegedChannels.put(channel, new PrivilegedChannelInfo(receptionPortURI, p));
+		this.channels.put(
+			channel,
+			new ChannelState(channel, new PrivilegedChannelInfo(receptionPortURI, p)));
 		this.createdPrivilegedChannelsCount.put(
 			receptionPortURI,
 			this.createdPrivilegedChannelsCount.getOrDefault(receptionPortURI, 0) + 1);
-		} finally {
-			this.stateLock.writeLock().unlock();
 		}
 	}
 
@@ -685,69 +1981,45 @@ public class Broker extends AbstractComponent
 		if (uri == null || uri.isEmpty()) {
 			throw new IllegalArgumentException("uri cannot be null or empty.");
 		}
-		if (!this.registered(uri)) {
-			throw new UnknownClientException(uri);
-		}
-		if (!this.channelExist(channel)) {
-			throw new UnknownChannelException(channel);
-		}
-
-		// FREE channel => always authorised
-		if (!this.privilegedChannels.containsKey(channel)) {
-			return true;
-		}
-
-		PrivilegedChannelInfo info = this.privilegedChannels.get(channel);
-		if (info == null || info.authorisedUsersPattern == null) {
-			return true;
-		}
-		return info.authorisedUsersPattern.matcher(uri).matches();
+		return this.channelState(uri, channel).authorised(uri);
 	}
 
-	public void modifyAuthorisedUsers(String receptionPortURI, String channel, String autorisedUsers) throws Exception
+	/**
+	 * return the metadata of the privileged {@code channel} owned by
+	 * {@code receptionPortURI}.
+	 *
+	 * @param receptionPortURI	URI of the inbound port of the alleged owner.
+	 * @param channel			name of the channel.
+	 * @return					the privileged metadata of {@code channel}.
+	 * @throws Exception		<i>to do</i>.
+	 */
+	private PrivilegedChannelInfo ownedPrivilegedInfo(String receptionPortURI, String channel) throws Exception
 	{
-		this.stateLock.writeLock().lock();
-		try {
-		if (!this.registered(receptionPortURI)) {
-			throw new UnknownClientException(receptionPortURI);
-		}
-		if (!this.channelExist(channel)) {
-			throw new UnknownChannelException(channel);
-		}
-		PrivilegedChannelInfo info = this.privilegedChannels.get(channel);
+		PrivilegedChannelInfo info = this.channelState(receptionPortURI, channel).privilegedInfo;
 		if (info == null) {
-			// only privileged channels can be modified
+			// only privileged channels can be modified or destroyed
 			throw new UnauthorisedClientException();
 		}
 		if (!info.ownerReceptionPortURI.equals(receptionPortURI)) {
 			throw new UnauthorisedClientException();
 		}
+		return info;
+	}
+
+	public void modifyAuthorisedUsers(String receptionPortURI, String channel, String autorisedUsers) throws Exception
+	{
+		PrivilegedChannelInfo info = this.ownedPrivilegedInfo(receptionPortURI, channel);
 		if (autorisedUsers == null || autorisedUsers.isEmpty()) {
 			throw new IllegalArgumentException("autorisedUsers cannot be null/empty for modifyAuthorisedUsers.");
 		}
 		info.authorisedUsersPattern = Pattern.compile(autorisedUsers);
-		} finally {
-			this.stateLock.writeLock().unlock();
-		}
 	}
 
 	// Kept as an internal helper; the corresponding method has been removed from
 	// PrivilegedClientCI in the latest interfaces update.
 	public void removeAuthorisedUsers(String receptionPortURI, String channel, String regularExpression) throws Exception
 	{
-		if (!this.registered(receptionPortURI)) {
-			throw new UnknownClientException(receptionPortURI);
-		}
-		if (!this.channelExist(channel)) {
-			throw new UnknownChannelException(channel);
-		}
-		PrivilegedChannelInfo info = this.privilegedChannels.get(channel);
-		if (info == null) {
-			throw new UnauthorisedClientException();
-		}
-		if (!info.ownerReceptionPortURI.equals(receptionPortURI)) {
-			throw new UnauthorisedClientException();
-		}
+		PrivilegedChannelInfo info = this.ownedPrivilegedInfo(receptionPortURI, channel);
 		if (regularExpression == null || regularExpression.isEmpty()) {
 			throw new IllegalArgumentException("regularExpression cannot be null/empty.");
 		}
@@ -756,69 +2028,45 @@ public class Broker extends AbstractComponent
 		// We implement a pragmatic behaviour: remove authorised users by forbidding
 		// those matching the provided regex through a negative lookahead.
 		Pattern toRemove = Pattern.compile(regularExpression);
-		Pattern current = info.authorisedUsersPattern;
-		String currentRegex = current == null ? ".*" : current.pattern();
+		synchronized (info) {
+			Pattern current = info.authorisedUsersPattern;
+			String currentRegex = current == null ? ".*" : current.pattern();
 
-		// If current already forbids removed ones, keep it; else add a negative lookahead.
-		String newRegex = "^(?!(" + toRemove.pattern() + ")$)" + currentRegex;
-		info.authorisedUsersPattern = Pattern.compile(newRegex);
+			// If current already forbids removed ones, keep it; else add a negative lookahead.
+			String newRegex = "^(?!(" + toRemove.pattern() + ")$)" + currentRegex;
+			info.authorisedUsersPattern = Pattern.compile(newRegex);
+		}
 	}
 
 	public void destroyChannel(String receptionPortURI, String channel) throws Exception
 	{
-		if (!this.registered(receptionPortURI)) {
-			throw new UnknownClientException(receptionPortURI);
-		}
-		if (!this.channelExist(channel)) {
-			throw new UnknownChannelException(channel);
-		}
-		PrivilegedChannelInfo info = this.privilegedChannels.get(channel);
-		if (info == null || !info.ownerReceptionPortURI.equals(receptionPortURI)) {
-			throw new UnauthorisedClientException();
-		}
-		// Wait until no more in-flight messages on this channel.
-		while (true) {
-			this.stateLock.readLock().lock();
-			try {
-				int inFlight = this.inFlightPerChannel.getOrDefault(channel, 0);
-				if (inFlight == 0) {
-					break;
-				}
-			} finally {
-				this.stateLock.readLock().unlock();
-			}
-			Thread.sleep(10);
+		this.ownedPrivilegedInfo(receptionPortURI, channel);
+		ChannelState cs = this.channels.get(channel);
+		// Refuse new publications and wait until the last in-flight message
+		// on this channel has been delivered.
+		if (cs != null) {
+			cs.drain().get();
 		}
 		this.destroyChannelNow(receptionPortURI, channel);
 	}
 
 	public void destroyChannelNow(String receptionPortURI, String channel) throws Exception
 	{
-		if (!this.registered(receptionPortURI)) {
-			throw new UnknownClientException(receptionPortURI);
-		}
-		if (!this.channelExist(channel)) {
-			throw new UnknownChannelException(channel);
-		}
+		synchronized (this.registryLock) {
+			this.ownedPrivilegedInfo(receptionPortURI, channel);
+
+			// remove the channel and its subscriptions
+			ChannelState cs = this.channels.remove(channel);
+			synchronized (cs) {
+				cs.destroyed = true;
+				cs.subscriptions.clear();
+				cs.publishTargets();
+			}
 
-		PrivilegedChannelInfo info = this.privilegedChannels.get(channel);
-		if (info == null) {
-			// Only privileged channels can be destroyed through this interface
-			throw new UnauthorisedClientException();
+			// update quota bookkeeping
+			this.createdPrivilegedChannelsCount.put(
+				receptionPortURI,
+				Math.max(0, this.createdPrivilegedChannelsCount.getOrDefault(receptionPortURI, 1) - 1));
 		}
-		if (!info.ownerReceptionPortURI.equals(receptionPortURI)) {
-			throw new UnauthorisedClientException();
-		}
-
-		// remove subscriptions
-		this.subscriptions.remove(channel);
-		this.channels.remove(channel);
-		this.privilegedChannels.remove(channel);
-		this.inFlightPerChannel.remove(channel);
-
-		// update quota bookkeeping
-		this.createdPrivilegedChannelsCount.put(
-			receptionPortURI,
-			Math.max(0, this.createdPrivilegedChannelsCount.getOrDefault(receptionPortURI, 1) - 1));
 	}
 }
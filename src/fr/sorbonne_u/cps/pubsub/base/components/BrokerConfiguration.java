@@ -0,0 +1,342 @@
+package fr.sorbonne_u.cps.pubsub.base.components;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import fr.sorbonne_u.cps.pubsub.interfaces.RegistrationCI.RegistrationClass;
+
+/**
+ * Tuning options of the {@link Broker} delivery pipeline.
+ *
+ * <p>
+ * A configuration is passed to the broker at creation time (it is
+ * {@link Serializable} so that it can be given through
+ * {@code AbstractComponent.createComponent}); the broker copies it in its
+ * constructor, so that later changes to the given instance have no effect.
+ * Setters return {@code this} to allow chained calls.
+ * </p>
+ *
+ * @author Bogdan Styn
+ */
+public class BrokerConfiguration implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	/** By default, filters are evaluated in bulk by the propagation stage. */
+	public static final boolean DEFAULT_MATCH_ON_PROPAGATION = true;
+
+	/** By default, each matching message is delivered on its own. */
+	public static final int DEFAULT_DELIVERY_BATCH_SIZE = 1;
+	/** Default maximum time a message waits in a delivery batch. */
+	public static final long DEFAULT_DELIVERY_LINGER_MILLIS = 5L;
+	/** By default, filters are compiled after 1000 propagations with the same subscriptions. */
+	public static final int DEFAULT_MATCHER_COMPILATION_THRESHOLD = 1000;
+	/** By default, mailboxes are unbounded. */
+	public static final int DEFAULT_MAILBOX_CAPACITY = 0;
+	/** Default delivery weights of the FREE, STANDARD and PREMIUM classes. */
+	public static final int DEFAULT_FREE_WEIGHT = 1;
+	public static final int DEFAULT_STANDARD_WEIGHT = 2;
+	public static final int DEFAULT_PREMIUM_WEIGHT = 4;
+	/** Default publication rate limit of the FREE class. */
+	public static final RateLimit DEFAULT_FREE_RATE = new RateLimit(200.0, 400);
+	/** Default publication rate limit of the STANDARD class. */
+	public static final RateLimit DEFAULT_STANDARD_RATE = new RateLimit(1000.0, 2000);
+	/** Default publication rate limit of the PREMIUM class: unlimited. */
+	public static final RateLimit DEFAULT_PREMIUM_RATE = null;
+
+	/**
+	 * Publication rate limit of a client: a sustained rate in messages per
+	 * second and a burst, the number of messages that can be published at
+	 * once after a pause.
+	 */
+	public static final class RateLimit implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final double perSecond;
+		private final int burst;
+
+		/**
+		 * @param perSecond	sustained rate in messages per second (> 0).
+		 * @param burst		maximum number of messages accepted at once (>= 1).
+		 */
+		public RateLimit(double perSecond, int burst)
+		{
+			if (!(perSecond > 0.0) || Double.isInfinite(perSecond)) {
+				throw new IllegalArgumentException("perSecond must be > 0 and finite.");
+			}
+			if (burst < 1) {
+				throw new IllegalArgumentException("burst must be >= 1.");
+			}
+			this.perSecond = perSecond;
+			this.burst = burst;
+		}
+
+		public double getPerSecond()
+		{
+			return this.perSecond;
+		}
+
+		public int getBurst()
+		{
+			return this.burst;
+		}
+	}
+
+	/**
+	 * What the broker does when the mailbox of a subscriber is full.
+	 */
+	public static enum OverflowPolicy
+	{
+		/** drop the oldest pending message to make room for the new one. */
+		DROP_OLDEST,
+		/** drop the new message. */
+		DROP_NEWEST,
+		/** drop the pending messages and unregister the subscriber. */
+		DISCONNECT
+	}
+
+	/**
+	 * When true, the propagation stage evaluates the subscribers filters and
+	 * only submits delivery work for matching subscribers; when false, each
+	 * subscriber gets a delivery task which evaluates its filter.
+	 */
+	protected boolean matchOnPropagation = DEFAULT_MATCH_ON_PROPAGATION;
+	/**
+	 * Maximum number of messages taken from a subscriber mailbox by one
+	 * drain, those of a same channel being coalesced into a single
+	 * {@code ReceivingCI.receive(String, MessageI[])} call; 1 disables
+	 * delivery batching.
+	 */
+	protected int deliveryBatchSize = DEFAULT_DELIVERY_BATCH_SIZE;
+	/** Maximum time in milliseconds a message waits in its mailbox for a batch to fill up. */
+	protected long deliveryLingerMillis = DEFAULT_DELIVERY_LINGER_MILLIS;
+	/**
+	 * Number of propagations on a channel with unchanged subscriptions after
+	 * which its filters are compiled into a generated matcher; negative
+	 * values disable the compilation.
+	 */
+	protected int matcherCompilationThreshold = DEFAULT_MATCHER_COMPILATION_THRESHOLD;
+	/**
+	 * Maximum number of messages waiting in the mailbox of one subscriber; 0
+	 * means unbounded.
+	 */
+	protected int mailboxCapacity = DEFAULT_MAILBOX_CAPACITY;
+	/** Policy applied when a mailbox is full. */
+	protected OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+	/**
+	 * Share of the delivery threads given to the subscribers of each
+	 * registration class when they compete, indexed by ordinal.
+	 */
+	protected int[] deliveryWeights = { DEFAULT_FREE_WEIGHT, DEFAULT_STANDARD_WEIGHT, DEFAULT_PREMIUM_WEIGHT };
+	/** Publication rate limit of each registration class, indexed by ordinal; null means unlimited. */
+	protected RateLimit[] classRates = { DEFAULT_FREE_RATE, DEFAULT_STANDARD_RATE, DEFAULT_PREMIUM_RATE };
+	/**
+	 * Publication rate limits of given clients, by reception port URI,
+	 * overriding the limit of their class; a null limit means unlimited.
+	 */
+	protected Map<String, RateLimit> clientRates = new HashMap<>();
+
+	/**
+	 * Create a configuration with default values.
+	 */
+	public BrokerConfiguration()
+	{
+	}
+
+	/**
+	 * Create a copy of {@code other}.
+	 *
+	 * @param other	configuration to copy.
+	 */
+	public BrokerConfiguration(BrokerConfiguration other)
+	{
+		this.matchOnPropagation = other.matchOnPropagation;
+		this.deliveryBatchSize = other.deliveryBatchSize;
+		this.deliveryLingerMillis = other.deliveryLingerMillis;
+		this.matcherCompilationThreshold = other.matcherCompilationThreshold;
+		this.mailboxCapacity = other.mailboxCapacity;
+		this.overflowPolicy = other.overflowPolicy;
+		this.deliveryWeights = other.deliveryWeights.clone();
+		this.classRates = other.classRates.clone();
+		this.clientRates = new HashMap<>(other.clientRates);
+	}
+
+	public boolean isMatchOnPropagation()
+	{
+		return this.matchOnPropagation;
+	}
+
+	public BrokerConfiguration setMatchOnPropagation(boolean matchOnPropagation)
+	{
+		this.matchOnPropagation = matchOnPropagation;
+		return this;
+	}
+
+	public int getDeliveryBatchSize()
+	{
+		return this.deliveryBatchSize;
+	}
+
+	public long getDeliveryLingerMillis()
+	{
+		return this.deliveryLingerMillis;
+	}
+
+	/** @return true if messages are coalesced per subscriber before delivery. */
+	public boolean isDeliveryBatching()
+	{
+		return this.deliveryBatchSize > 1;
+	}
+
+	/**
+	 * enable delivery batching: messages matching a subscription are
+	 * coalesced and delivered when {@code batchSize} messages are pending or
+	 * when the oldest one has waited {@code lingerMillis} milliseconds.
+	 *
+	 * @param batchSize		maximum number of messages per delivery call (1 disables batching).
+	 * @param lingerMillis	maximum time in milliseconds a message waits for its batch.
+	 * @return				this configuration.
+	 */
+	public BrokerConfiguration setDeliveryBatching(int batchSize, long lingerMillis)
+	{
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be >= 1.");
+		}
+		if (lingerMillis < 0) {
+			throw new IllegalArgumentException("lingerMillis must be >= 0.");
+		}
+		this.deliveryBatchSize = batchSize;
+		this.deliveryLingerMillis = lingerMillis;
+		return this;
+	}
+
+	public int getMatcherCompilationThreshold()
+	{
+		return this.matcherCompilationThreshold;
+	}
+
+	/**
+	 * set the number of propagations on a channel with unchanged
+	 * subscriptions after which its filters are compiled, by a task apart
+	 * from the propagations, which interpret them meanwhile; a negative value
+	 * disables the compilation, 0 submits it on the first propagation.
+	 *
+	 * @param threshold	number of propagations before compilation.
+	 * @return			this configuration.
+	 */
+	public BrokerConfiguration setMatcherCompilationThreshold(int threshold)
+	{
+		this.matcherCompilationThreshold = threshold;
+		return this;
+	}
+
+	public int getMailboxCapacity()
+	{
+		return this.mailboxCapacity;
+	}
+
+	public OverflowPolicy getOverflowPolicy()
+	{
+		return this.overflowPolicy;
+	}
+
+	/**
+	 * bound the subscriber mailboxes: the messages to deliver to a
+	 * subscriber wait in its mailbox, drained in order by one delivery task
+	 * at a time; when {@code capacity} messages are waiting, {@code policy}
+	 * applies.
+	 *
+	 * @param capacity	maximum number of messages waiting per subscriber (0 means unbounded).
+	 * @param policy	policy applied when a mailbox is full.
+	 * @return			this configuration.
+	 */
+	public BrokerConfiguration setMailbox(int capacity, OverflowPolicy policy)
+	{
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must be >= 0.");
+		}
+		if (policy == null) {
+			throw new IllegalArgumentException("policy cannot be null.");
+		}
+		this.mailboxCapacity = capacity;
+		this.overflowPolicy = policy;
+		return this;
+	}
+
+	public int getDeliveryWeight(RegistrationClass rc)
+	{
+		return this.deliveryWeights[rc.ordinal()];
+	}
+
+	/**
+	 * set the delivery weights of the registration classes: when subscribers
+	 * of several classes have messages waiting, the delivery threads serve
+	 * the classes in proportion to their weights, e.g. with 1, 2 and 4 a
+	 * PREMIUM subscriber is served four times for each FREE one.
+	 *
+	 * @param free		weight of the FREE class (>= 1).
+	 * @param standard	weight of the STANDARD class (>= 1).
+	 * @param premium	weight of the PREMIUM class (>= 1).
+	 * @return			this configuration.
+	 */
+	public BrokerConfiguration setDeliveryWeights(int free, int standard, int premium)
+	{
+		if (free < 1 || standard < 1 || premium < 1) {
+			throw new IllegalArgumentException("weights must be >= 1.");
+		}
+		this.deliveryWeights = new int[] { free, standard, premium };
+		return this;
+	}
+
+	/**
+	 * return the publication rate limit of the client of reception port
+	 * {@code receptionPortURI} and class {@code rc}.
+	 *
+	 * @param receptionPortURI	URI of the reception port of the client.
+	 * @param rc				registration class of the client.
+	 * @return					the rate limit, or null if the client is unlimited.
+	 */
+	public RateLimit getPublicationRate(String receptionPortURI, RegistrationClass rc)
+	{
+		if (this.clientRates.containsKey(receptionPortURI)) {
+			return this.clientRates.get(receptionPortURI);
+		}
+		return this.classRates[rc.ordinal()];
+	}
+
+	/**
+	 * set the publication rate limit of the clients of class {@code rc}
+	 * which have no limit of their own.
+	 *
+	 * @param rc	registration class.
+	 * @param limit	rate limit, null for unlimited.
+	 * @return		this configuration.
+	 */
+	public BrokerConfiguration setPublicationRate(RegistrationClass rc, RateLimit limit)
+	{
+		if (rc == null) {
+			throw new IllegalArgumentException("rc cannot be null.");
+		}
+		this.classRates[rc.ordinal()] = limit;
+		return this;
+	}
+
+	/**
+	 * set the publication rate limit of the client of reception port
+	 * {@code receptionPortURI}, whatever its class.
+	 *
+	 * @param receptionPortURI	URI of the reception port of the client.
+	 * @param limit				rate limit, null for unlimited.
+	 * @return					this configuration.
+	 */
+	public BrokerConfiguration setPublicationRate(String receptionPortURI, RateLimit limit)
+	{
+		if (receptionPortURI == null || receptionPortURI.isEmpty()) {
+			throw new IllegalArgumentException("receptionPortURI cannot be null or empty.");
+		}
+		this.clientRates.put(receptionPortURI, limit);
+		return this;
+	}
+}
@@ -1,5 +1,7 @@
 package fr.sorbonne_u.cps.pubsub.base.components;
 
+import java.util.concurrent.CompletableFuture;
+
 import fr.sorbonne_u.components.AbstractComponent;
 import fr.sorbonne_u.components.annotations.OfferedInterfaces;
 import fr.sorbonne_u.components.annotations.RequiredInterfaces;
@@ -11,6 +13,8 @@ import fr.sorbonne_u.cps.pubsub.exceptions.UnknownClientException;
 import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI;
 import fr.sorbonne_u.cps.pubsub.interfaces.MessageI;
 import fr.sorbonne_u.cps.pubsub.interfaces.PrivilegedClientCI;
+import fr.sorbonne_u.cps.pubsub.interfaces.PublicationNotificationCI;
+import fr.sorbonne_u.cps.pubsub.interfaces.PublicationNotificationCI.PublicationReport;
 import fr.sorbonne_u.cps.pubsub.interfaces.PublishingCI;
 import fr.sorbonne_u.cps.pubsub.interfaces.ReceivingCI;
 import fr.sorbonne_u.cps.pubsub.interfaces.RegistrationCI;
@@ -28,7 +32,7 @@ import fr.sorbonne_u.cps.pubsub.plugins.ClientSubscriptionPlugin;
  *
  * @author Bogdan Styn
  */
-@OfferedInterfaces(offered = { ReceivingCI.class })
+@OfferedInterfaces(offered = { ReceivingCI.class, PublicationNotificationCI.class })
 @RequiredInterfaces(required = {
 	RegistrationCI.class,
 	PublishingCI.class,
@@ -139,6 +143,25 @@ public class PluginClient extends AbstractComponent
 		this.publicationPlugin.publish(channel, message);
 	}
 
+	/**
+	 * publish {@code message} on {@code channel} without waiting for the
+	 * broker; see {@link ClientPublicationPlugin#publishAsync(String, MessageI)}.
+	 */
+	public CompletableFuture<PublicationReport> publishAsync(String channel, MessageI message)
+	throws InterruptedException
+	{
+		return this.publicationPlugin.publishAsync(channel, message);
+	}
+
+	/**
+	 * batch the messages published one by one by {@code publish}; see
+	 * {@link ClientPublicationPlugin#setBatching(int, long, long)}.
+	 */
+	public void setPublicationBatching(int maxMessages, long maxBytes, long lingerMillis)
+	{
+		this.publicationPlugin.setBatching(maxMessages, maxBytes, lingerMillis);
+	}
+
 	// ---------------------------------------------------------------------
 	// Privileged channel management
 	// ---------------------------------------------------------------------
@@ -207,6 +230,25 @@ public class PluginClient extends AbstractComponent
 				+ " timestamp=" + message.getTimeStamp() + "\n");
 	}
 
+	/**
+	 * handle consecutive messages received on {@code channel}, in order; by
+	 * default, each one is handed to {@link #onReceive(String, MessageI)}.
+	 * Subclasses override it to handle the batch at once.
+	 *
+	 * @param channel	channel of the messages.
+	 * @param messages	messages received, or null.
+	 */
+	public void onReceive(String channel, MessageI[] messages)
+	{
+		if (messages == null) {
+			this.onReceive(channel, (MessageI) null);
+			return;
+		}
+		for (MessageI m : messages) {
+			this.onReceive(channel, m);
+		}
+	}
+
 	// Rely on the BCM lifecycle (uninstallPlugin/shutdown) to cleanly disconnect
 	// and destroy ports. Avoid custom shutdown actions as they can conflict with
 	// the framework teardown order when assertions are enabled (-ea).
@@ -0,0 +1,24 @@
+package fr.sorbonne_u.cps.pubsub.base.connectors;
+
+import java.rmi.RemoteException;
+
+import fr.sorbonne_u.components.connectors.AbstractConnector;
+import fr.sorbonne_u.cps.pubsub.interfaces.PublicationNotificationCI;
+
+/**
+ * Connector used by the broker to report the outcome of publications to
+ * publishers through the {@link PublicationNotificationCI} interface.
+ *
+ * @author Bogdan Styn
+ */
+public class BrokerClientNotificationConnector extends AbstractConnector implements PublicationNotificationCI {
+
+	@Override
+	public void notifyPublications(PublicationReport[] reports) throws RemoteException {
+		try {
+			((PublicationNotificationCI) this.offering).notifyPublications(reports);
+		} catch (Exception e) {
+			throw new RemoteException(e.getMessage(), e);
+		}
+	}
+}
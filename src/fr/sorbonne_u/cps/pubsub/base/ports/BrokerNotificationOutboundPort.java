@@ -0,0 +1,29 @@
+package fr.sorbonne_u.cps.pubsub.base.ports;
+
+import java.rmi.RemoteException;
+
+import fr.sorbonne_u.components.ComponentI;
+import fr.sorbonne_u.components.ports.AbstractOutboundPort;
+import fr.sorbonne_u.cps.pubsub.interfaces.PublicationNotificationCI;
+
+/**
+ * Outbound port used by the broker to report the outcome of publications to
+ * a given notification inbound port.
+ *
+ * @author Bogdan Styn
+ */
+public class BrokerNotificationOutboundPort extends AbstractOutboundPort implements PublicationNotificationCI {
+
+	public BrokerNotificationOutboundPort(ComponentI owner) throws Exception {
+		super(PublicationNotificationCI.class, owner);
+	}
+
+	@Override
+	public void notifyPublications(PublicationReport[] reports) throws RemoteException {
+		try {
+			((PublicationNotificationCI) this.getConnector()).notifyPublications(reports);
+		} catch (Exception e) {
+			throw new RemoteException(e.getMessage(), e);
+		}
+	}
+}
@@ -1,6 +1,9 @@
 package fr.sorbonne_u.cps.pubsub.base.ports;
 
 import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import fr.sorbonne_u.components.ComponentI;
 import fr.sorbonne_u.components.ports.AbstractInboundPort;
@@ -13,11 +16,44 @@ import fr.sorbonne_u.cps.pubsub.base.components.PluginClient;
  * Inbound port used by the broker to deliver messages to a client.
  * Works with both the legacy {@link Client} and the plugin-based {@link PluginClient}.
  *
+ * <p>
+ * Deliveries are queued in a lock-free queue drained by one task of the
+ * owner at a time: the owner handles them in the order of reception, and
+ * the consecutive messages of a channel are handed over as one batch
+ * ({@code receive(String, MessageI[])} or
+ * {@code onReceive(String, MessageI[])}) to the handlers which opt in by
+ * overriding the batch variant.
+ * </p>
+ *
  * @author Bogdan Styn
  */
 public class ClientInboundPort extends AbstractInboundPort implements ReceivingCI {
-	
-	
+
+	/** Maximum number of messages handled by one drain task before yielding its thread. */
+	public static final int DRAIN_QUOTA = 256;
+
+	/** A delivery waiting for the owner: one message, or a batch of one channel. */
+	protected static final class Received
+	{
+		final String channel;
+		final MessageI message;
+		final MessageI[] messages;
+		/** True if received as a batch, which tells a null batch from a null message. */
+		final boolean batch;
+
+		Received(String channel, MessageI message, MessageI[] messages, boolean batch)
+		{
+			this.channel = channel;
+			this.message = message;
+			this.messages = messages;
+			this.batch = batch;
+		}
+	}
+
+	/** Deliveries not yet handled by the owner. */
+	protected final ConcurrentLinkedQueue<Received> received = new ConcurrentLinkedQueue<>();
+	/** True while a drain task is submitted or running. */
+	protected final AtomicBoolean scheduled = new AtomicBoolean();
 
 	public ClientInboundPort(ComponentI owner) throws Exception {
 		super(ReceivingCI.class, owner);
@@ -27,15 +63,8 @@ public class ClientInboundPort extends AbstractInboundPort implements ReceivingC
 	public void receive(String channel, MessageI message) throws RemoteException
 	{
 		try {
-			if (this.getOwner() instanceof Client) {
-				this.getOwner().runTask(o -> ((Client) o).receive(channel, message));
-			} else if (this.getOwner() instanceof PluginClient) {
-				this.getOwner().runTask(o -> ((PluginClient) o).onReceive(channel, message));
-			} else {
-				throw new IllegalStateException(
-					"ClientInboundPort owner must be Client or PluginClient, got "
-						+ this.getOwner().getClass().getCanonicalName());
-			}
+			this.checkOwner();
+			this.enqueue(new Received(channel, message, null, false));
 		} catch (Exception e) {
 			throw new RemoteException(e.getMessage(), e);
 		}
@@ -45,27 +74,116 @@ public class ClientInboundPort extends AbstractInboundPort implements ReceivingC
 	public void receive(String channel, MessageI[] messages) throws RemoteException
 	{
 		try {
-			if (this.getOwner() instanceof Client) {
-				this.getOwner().runTask(o -> ((Client) o).receive(channel, messages));
-			} else if (this.getOwner() instanceof PluginClient) {
-				this.getOwner().runTask(o -> {
-					PluginClient pc = (PluginClient) o;
-					if (messages != null) {
-						for (MessageI m : messages) {
-							pc.onReceive(channel, m);
-						}
-					} else {
-						pc.onReceive(channel, null);
-					}
-				});
-			} else {
-				throw new IllegalStateException(
-					"ClientInboundPort owner must be Client or PluginClient, got "
-						+ this.getOwner().getClass().getCanonicalName());
-			}
+			this.checkOwner();
+			this.enqueue(new Received(channel, null, messages, true));
 		} catch (Exception e) {
 			throw new RemoteException(e.getMessage(), e);
 		}
 	}
 
+	protected void checkOwner()
+	{
+		if (!(this.getOwner() instanceof Client) && !(this.getOwner() instanceof PluginClient)) {
+			throw new IllegalStateException(
+				"ClientInboundPort owner must be Client or PluginClient, got "
+					+ this.getOwner().getClass().getCanonicalName());
+		}
+	}
+
+	/** queue {@code r} and submit a drain task unless one is pending. */
+	protected void enqueue(Received r)
+	{
+		this.received.offer(r);
+		if (this.scheduled.compareAndSet(false, true)) {
+			this.getOwner().runTask(o -> this.drain(o));
+		}
+	}
+
+	/**
+	 * hand at most {@link #DRAIN_QUOTA} queued messages to {@code owner},
+	 * coalescing the consecutive messages of a channel, then resubmit the
+	 * drain if deliveries remain.
+	 */
+	protected void drain(ComponentI owner)
+	{
+		final ArrayList<MessageI> run = new ArrayList<>();
+		String channel = null;
+		int n = 0;
+		Received r;
+		while (n < DRAIN_QUOTA && (r = this.received.poll()) != null) {
+			if (!run.isEmpty() && !r.channel.equals(channel)) {
+				this.dispatch(owner, channel, run);
+				run.clear();
+			}
+			channel = r.channel;
+			if (r.messages != null) {
+				for (MessageI m : r.messages) {
+					run.add(m);
+				}
+				n += r.messages.length;
+			} else if (r.message != null) {
+				run.add(r.message);
+				n++;
+			} else {
+				// null message or batch: handed over as it is.
+				this.dispatch(owner, channel, run);
+				run.clear();
+				this.dispatchNull(owner, r);
+				n++;
+			}
+		}
+		this.dispatch(owner, channel, run);
+		this.scheduled.set(false);
+		// a delivery queued after the last poll but before the reset found
+		// the flag set: resubmit for it.
+		if (!this.received.isEmpty() && this.scheduled.compareAndSet(false, true)) {
+			owner.runTask(o -> this.drain(o));
+		}
+	}
+
+	/** hand the messages of {@code run}, received on {@code channel}, to {@code owner}. */
+	protected void dispatch(ComponentI owner, String channel, ArrayList<MessageI> run)
+	{
+		if (run.isEmpty()) {
+			return;
+		}
+		try {
+			if (owner instanceof Client) {
+				if (run.size() == 1) {
+					((Client) owner).receive(channel, run.get(0));
+				} else {
+					((Client) owner).receive(channel, run.toArray(new MessageI[run.size()]));
+				}
+			} else {
+				if (run.size() == 1) {
+					((PluginClient) owner).onReceive(channel, run.get(0));
+				} else {
+					((PluginClient) owner).onReceive(channel, run.toArray(new MessageI[run.size()]));
+				}
+			}
+		} catch (RuntimeException e) {
+			owner.logMessage("[ClientInboundPort] handler exception on " + channel + ": " + e + "\n");
+		}
+	}
+
+	/**
+	 * hand a null message or batch to {@code owner}, through the variant
+	 * it was received by; plugin clients get a null message in both cases.
+	 */
+	protected void dispatchNull(ComponentI owner, Received r)
+	{
+		try {
+			if (owner instanceof Client) {
+				if (r.batch) {
+					((Client) owner).receive(r.channel, (MessageI[]) null);
+				} else {
+					((Client) owner).receive(r.channel, (MessageI) null);
+				}
+			} else {
+				((PluginClient) owner).onReceive(r.channel, (MessageI) null);
+			}
+		} catch (RuntimeException e) {
+			owner.logMessage("[ClientInboundPort] handler exception on " + r.channel + ": " + e + "\n");
+		}
+	}
 }
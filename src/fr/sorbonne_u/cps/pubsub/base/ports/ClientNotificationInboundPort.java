@@ -0,0 +1,37 @@
+package fr.sorbonne_u.cps.pubsub.base.ports;
+
+import java.rmi.RemoteException;
+
+import fr.sorbonne_u.components.ComponentI;
+import fr.sorbonne_u.components.ports.AbstractInboundPort;
+import fr.sorbonne_u.cps.pubsub.interfaces.PublicationNotificationCI;
+import fr.sorbonne_u.cps.pubsub.plugins.ClientPublicationPlugin;
+
+/**
+ * Inbound port used by the broker to report the outcome of publications to
+ * the publication plugin of a client.
+ *
+ * @author Bogdan Styn
+ */
+public class ClientNotificationInboundPort extends AbstractInboundPort implements PublicationNotificationCI {
+
+	/** Plugin handling the reports. */
+	protected final ClientPublicationPlugin plugin;
+
+	public ClientNotificationInboundPort(ComponentI owner, ClientPublicationPlugin plugin) throws Exception {
+		super(PublicationNotificationCI.class, owner);
+		this.plugin = plugin;
+	}
+
+	@Override
+	public void notifyPublications(PublicationReport[] reports) throws RemoteException
+	{
+		try {
+			this.getOwner().runTask(
+				this.plugin.getNotificationExecutorIndex(),
+				o -> this.plugin.onPublicationReports(reports));
+		} catch (Exception e) {
+			throw new RemoteException(e.getMessage(), e);
+		}
+	}
+}
@@ -5,6 +5,7 @@ import fr.sorbonne_u.components.annotations.OfferedInterfaces;
 import fr.sorbonne_u.components.annotations.RequiredInterfaces;
 import fr.sorbonne_u.components.utils.tests.TestScenario;
 import fr.sorbonne_u.cps.pubsub.interfaces.PrivilegedClientCI;
+import fr.sorbonne_u.cps.pubsub.interfaces.PublicationNotificationCI;
 import fr.sorbonne_u.cps.pubsub.interfaces.PublishingCI;
 import fr.sorbonne_u.cps.pubsub.interfaces.ReceivingCI;
 import fr.sorbonne_u.cps.pubsub.interfaces.RegistrationCI;
@@ -19,7 +20,7 @@ import fr.sorbonne_u.utils.aclocks.ClocksServer;
  * component that calls it, hence every participant must call it.
  * </p>
  */
-@OfferedInterfaces(offered = { ReceivingCI.class })
+@OfferedInterfaces(offered = { ReceivingCI.class, PublicationNotificationCI.class })
 @RequiredInterfaces(required = { RegistrationCI.class, PublishingCI.class, PrivilegedClientCI.class })
 public class ScenarioPluginClient extends PluginClient
 {
@@ -0,0 +1,75 @@
+package fr.sorbonne_u.cps.pubsub.exceptions;
+
+import fr.sorbonne_u.components.exceptions.BCMException;
+
+// -----------------------------------------------------------------------------
+/**
+ * The class <code>PublicationBatchTooLargeException</code> implements the
+ * exception thrown when a list of messages is refused because it holds
+ * more messages than the burst of the publication rate of its publisher,
+ * so that it could never be accepted at once.
+ *
+ * <p><strong>Description</strong></p>
+ * 
+ * <p><strong>Implementation Invariants</strong></p>
+ * 
+ * <pre>
+ * invariant	{@code true}	// no more invariant
+ * </pre>
+ * 
+ * <p><strong>Invariants</strong></p>
+ * 
+ * <pre>
+ * invariant	{@code true}	// no more invariant
+ * </pre>
+ * 
+ * <p>Created on : 2026-10-17</p>
+ * 
+ * @author	Bogdan Styn
+ */
+public class			PublicationBatchTooLargeException
+extends		BCMException
+{
+	// -------------------------------------------------------------------------
+	// Constants and variables
+	// -------------------------------------------------------------------------
+
+	private static final long serialVersionUID = 1L;
+
+	// -------------------------------------------------------------------------
+	// Constructors
+	// -------------------------------------------------------------------------
+
+	public				PublicationBatchTooLargeException()
+	{
+	}
+
+	public				PublicationBatchTooLargeException(String message)
+	{
+		super(message);
+	}
+
+	public				PublicationBatchTooLargeException(Throwable cause)
+	{
+		super(cause);
+	}
+
+	public				PublicationBatchTooLargeException(
+		String message,
+		Throwable cause
+		)
+	{
+		super(message, cause);
+	}
+
+	public				PublicationBatchTooLargeException(
+		String message,
+		Throwable cause,
+		boolean enableSuppression,
+		boolean writableStackTrace
+		)
+	{
+		super(message, cause, enableSuppression, writableStackTrace);
+	}
+}
+// -----------------------------------------------------------------------------
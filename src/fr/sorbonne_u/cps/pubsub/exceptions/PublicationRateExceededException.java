@@ -0,0 +1,74 @@
+package fr.sorbonne_u.cps.pubsub.exceptions;
+
+import fr.sorbonne_u.components.exceptions.BCMException;
+
+// -----------------------------------------------------------------------------
+/**
+ * The class <code>PublicationRateExceededException</code> implements the
+ * exception thrown when a publication is refused because its publisher
+ * exceeded its publication rate.
+ *
+ * <p><strong>Description</strong></p>
+ * 
+ * <p><strong>Implementation Invariants</strong></p>
+ * 
+ * <pre>
+ * invariant	{@code true}	// no more invariant
+ * </pre>
+ * 
+ * <p><strong>Invariants</strong></p>
+ * 
+ * <pre>
+ * invariant	{@code true}	// no more invariant
+ * </pre>
+ * 
+ * <p>Created on : 2026-10-17</p>
+ * 
+ * @author	Bogdan Styn
+ */
+public class			PublicationRateExceededException
+extends		BCMException
+{
+	// -------------------------------------------------------------------------
+	// Constants and variables
+	// -------------------------------------------------------------------------
+
+	private static final long serialVersionUID = 1L;
+
+	// -------------------------------------------------------------------------
+	// Constructors
+	// -------------------------------------------------------------------------
+
+	public				PublicationRateExceededException()
+	{
+	}
+
+	public				PublicationRateExceededException(String message)
+	{
+		super(message);
+	}
+
+	public				PublicationRateExceededException(Throwable cause)
+	{
+		super(cause);
+	}
+
+	public				PublicationRateExceededException(
+		String message,
+		Throwable cause
+		)
+	{
+		super(message, cause);
+	}
+
+	public				PublicationRateExceededException(
+		String message,
+		Throwable cause,
+		boolean enableSuppression,
+		boolean writableStackTrace
+		)
+	{
+		super(message, cause, enableSuppression, writableStackTrace);
+	}
+}
+// -----------------------------------------------------------------------------
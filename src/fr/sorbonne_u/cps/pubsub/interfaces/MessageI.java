@@ -143,6 +143,7 @@ extends		Serializable
 	 *
 	 * @param name	the name of the property to be added.
 	 * @param value	the value of the property to be added.
+	 * @throws IllegalStateException	when this message cannot be modified, <i>e.g.</i> a frozen {@code Message}.
 	 */
 	public void			putProperty(String name, Serializable value);
 
@@ -158,6 +159,7 @@ extends		Serializable
 	 *
 	 * @param name						the name of a property to be removed.
 	 * @throws UnknownPropertyException	when {@code name} does not correspond to an existing property of this message.
+	 * @throws IllegalStateException		when this message cannot be modified, <i>e.g.</i> a frozen {@code Message}.
 	 */
 	public void			removeProperty(String name)
 	throws	UnknownPropertyException;
@@ -220,6 +222,7 @@ extends		Serializable
 	 * </pre>
 	 *
 	 * @param payload	payload to be set.
+	 * @throws IllegalStateException	when this message cannot be modified, <i>e.g.</i> a frozen {@code Message}.
 	 */
 	public void			setPayload(Serializable payload);
 
@@ -0,0 +1,161 @@
+package fr.sorbonne_u.cps.pubsub.interfaces;
+
+import java.io.Serializable;
+
+import fr.sorbonne_u.components.interfaces.OfferedCI;
+import fr.sorbonne_u.components.interfaces.RequiredCI;
+
+// -----------------------------------------------------------------------------
+/**
+ * The component interface <code>PublicationNotificationCI</code> is offered
+ * by the publishers to receive from the publication/subscription system the
+ * outcome of their {@code asyncPublishAndNotify} publications.
+ *
+ * <p><strong>Description</strong></p>
+ * 
+ * <p>
+ * The outcome of a publication is reported once all its deliveries have
+ * ended, or at once when the publication is refused. Reports are coalesced:
+ * the reports pending for the same inbound port are sent in one call.
+ * </p>
+ * 
+ * <p><strong>Invariants</strong></p>
+ * 
+ * <pre>
+ * invariant	{@code true}	// no more invariant
+ * </pre>
+ * 
+ * <p>Created on : 2026-10-17</p>
+ * 
+ * @author	Bogdan Styn
+ */
+public interface		PublicationNotificationCI
+extends		OfferedCI,
+			RequiredCI
+{
+	// -------------------------------------------------------------------------
+	// Inner types and classes
+	// -------------------------------------------------------------------------
+
+	/**
+	 * The class <code>PublicationReport</code> describes the outcome of one
+	 * publication, i.e. of one message or of one list of messages published
+	 * in one call.
+	 *
+	 * <p>
+	 * A message is identified by {@code Message.getId()}; messages of other
+	 * implementations of {@code MessageI} have the identifier 0.
+	 * </p>
+	 */
+	public static class	PublicationReport
+	implements	Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		/** name of the channel of the publication.							*/
+		protected final String		channel;
+		/** identifiers of the published messages, in publication order.		*/
+		protected final long[]		messageIds;
+		/** number of messages delivered to a subscriber (one per subscriber).	*/
+		protected final int			delivered;
+		/** number of deliveries which failed or were dropped.					*/
+		protected final int			failed;
+		/** number of messages refused by the broker.							*/
+		protected final int			rejected;
+		/** cause of the refusal or of the abnormal termination, or null.		*/
+		protected final Exception	error;
+
+		public			PublicationReport(
+			String channel,
+			long[] messageIds,
+			int delivered,
+			int failed,
+			int rejected,
+			Exception error
+			)
+		{
+			this.channel = channel;
+			this.messageIds = messageIds;
+			this.delivered = delivered;
+			this.failed = failed;
+			this.rejected = rejected;
+			this.error = error;
+		}
+
+		public String	getChannel()
+		{
+			return this.channel;
+		}
+
+		public long[]	getMessageIds()
+		{
+			return this.messageIds;
+		}
+
+		public int		getDelivered()
+		{
+			return this.delivered;
+		}
+
+		public int		getFailed()
+		{
+			return this.failed;
+		}
+
+		public int		getRejected()
+		{
+			return this.rejected;
+		}
+
+		public Exception	getError()
+		{
+			return this.error;
+		}
+
+		/**
+		 * return true if the publication was accepted and all its deliveries
+		 * succeeded.
+		 *
+		 * @return	true if the publication terminated normally.
+		 */
+		public boolean	isNormalTermination()
+		{
+			return this.rejected == 0 && this.failed == 0 && this.error == null;
+		}
+
+		/**
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String	toString()
+		{
+			return "PublicationReport[" + this.channel + ", " + this.messageIds.length
+					+ " message(s), delivered=" + this.delivered + ", failed=" + this.failed
+					+ ", rejected=" + this.rejected
+					+ (this.error != null ? ", error=" + this.error : "") + "]";
+		}
+	}
+
+	// -------------------------------------------------------------------------
+	// Signature and default methods
+	// -------------------------------------------------------------------------
+
+	/**
+	 * receive the outcome of publications; the call is executed
+	 * asynchronously to free the broker thread as soon as the corresponding
+	 * task is submitted to the publisher.
+	 * 
+	 * <p><strong>Contract</strong></p>
+	 * 
+	 * <pre>
+	 * pre	{@code reports != null && reports.length > 0}
+	 * post	{@code true}	// no postcondition.
+	 * </pre>
+	 *
+	 * @param reports		reports of ended publications.
+	 * @throws Exception	<i>to do</i>.
+	 */
+	public void			notifyPublications(PublicationReport[] reports)
+	throws Exception;
+}
+// -----------------------------------------------------------------------------
@@ -125,7 +125,7 @@ extends		OfferedCI,
 	 * @param receptionPortURI				URI of the inbound port offering the component interface {@code ReceivingCI}.
 	 * @param channel						name of the channel on which {@code message} must be published.
 	 * @param message						message to be published to {@code channel}.
-	 * @param notificationInbounhdPortURI	URI of an inbound port offering {@code AbnormalTerminationNotificationCI}.
+	 * @param notificationInbounhdPortURI	URI of an inbound port offering {@code PublicationNotificationCI}, or null.
 	 * @throws Exception					<i>to do</i>.
 	 */
 	public void			asyncPublishAndNotify(
@@ -153,7 +153,7 @@ extends		OfferedCI,
 	 * @param receptionPortURI				URI of the inbound port offering the component interface {@code ReceivingCI}.
 	 * @param channel						name of the channel on which {@code message} must be published.
 	 * @param messages						list of messages to be published on {@code channel}.
-	 * @param notificationInbounhdPortURI	URI of an inbound port offering {@code AbnormalTerminationNotificationCI}.
+	 * @param notificationInbounhdPortURI	URI of an inbound port offering {@code PublicationNotificationCI}, or null.
 	 * @throws Exception					<i>to do</i>.
 	 */
 	public void			asyncPublishAndNotify(
@@ -1,14 +1,17 @@
 package fr.sorbonne_u.cps.pubsub.messages;
 
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.time.Instant;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Hashtable;
+import java.util.concurrent.atomic.AtomicLong;
 
 import fr.sorbonne_u.cps.pubsub.exceptions.UnknownPropertyException;
 import fr.sorbonne_u.cps.pubsub.interfaces.MessageI;
+import fr.sorbonne_u.cps.pubsub.messages.codec.ValueCodec;
 
 /**
  * La classe {@code Message} implémente {@link MessageI} comme représentation
@@ -20,6 +23,9 @@ import fr.sorbonne_u.cps.pubsub.interfaces.MessageI;
  * <ul>
  *   <li>d’une charge utile (payload), tout objet {@link Serializable} ;</li>
  *   <li>d’un horodatage (date de création) ;</li>
+ *   <li>d’un identifiant, unique parmi les messages créés par une même JVM,
+ *   qui permet à un éditeur de rapprocher un message des notifications de
+ *   sa publication ;</li>
  *   <li>d’un ensemble de propriétés nommées (paires nom/valeur).</li>
  * </ul>
  *
@@ -28,10 +34,35 @@ import fr.sorbonne_u.cps.pubsub.interfaces.MessageI;
  * </p>
  * <ul>
  *   <li>les noms de propriétés sont uniques dans un message ;</li>
- *   <li>{@link #copy()} effectue une copie profonde de la structure du message
- *   et des propriétés, mais conserve une référence vers le même objet payload.</li>
+ *   <li>{@link #copy()} effectue une copie de la structure du message, qui
+ *   partage les propriétés (immuables) et le même objet payload.</li>
  * </ul>
  *
+ * <p>
+ * Les propriétés sont immuables et rangées dans un tableau remplacé à chaque
+ * modification (copie sur écriture) : les lectures, qui dominent largement
+ * une fois le message publié, se font sans verrou ni copie, et une copie du
+ * message partage le tableau de l’original. Les noms de propriétés sont
+ * internés, ce qui réduit la recherche d’un nom usuel à des comparaisons de
+ * références.
+ * </p>
+ *
+ * <p>
+ * Le courtier ne modifie ni ne gèle le message d’un éditeur : il en prend
+ * à l’admission un instantané ({@link #share()}) qu’il gèle
+ * ({@link #freeze()}) et partage entre ses filtres, puis remet à chaque
+ * abonné local sa propre copie par {@link #share()}, en temps constant.
+ * Une copie ne recopie le tableau des propriétés que si son détenteur la
+ * modifie. Seuls les mutateurs d’un message gelé lèvent
+ * {@link IllegalStateException}.
+ * </p>
+ *
+ * <p>
+ * Un {@code Message} est sérialisé sous une forme compacte
+ * ({@link SerializedMessage}) encodée par
+ * {@link fr.sorbonne_u.cps.pubsub.messages.codec.ValueCodec}.
+ * </p>
+ *
  *
  * @author Bogdan Styn
  */
@@ -43,16 +74,24 @@ public class Message implements MessageI
 	private Serializable payload;
 	/** Horodatage de création du message (immuable). */
 	private final Instant timeStamp;
+	/** Identifiant du message (immuable, jamais 0). */
+	private final long id;
 	/**
-	 * Propriétés indexées par leur nom.
+	 * Propriétés, de noms uniques, dans leur ordre d’ajout.
 	 *
 	 * <p>
-	 * Un {@link Hashtable} est utilisé pour éviter les avertissements de
-	 * sérialisation (il est sérialisable, contrairement à l’interface
-	 * {@link Map}).
+	 * Le tableau n’est jamais modifié : les mutateurs, synchronisés, en
+	 * publient un nouveau.
 	 * </p>
 	 */
-	private final Hashtable<String, PropertyI> properties;
+	private volatile Property[] properties;
+	/** Vrai une fois le message gelé : il est alors partagé en lecture seule. */
+	private volatile boolean frozen;
+
+	/** Tableau vide partagé par les messages sans propriété. */
+	private static final Property[] NO_PROPERTIES = new Property[0];
+	/** Dernier identifiant attribué. */
+	private static final AtomicLong LAST_ID = new AtomicLong();
 
 	// -------------------------------------------------------------------------
 	// Inner classes
@@ -81,10 +120,20 @@ public class Message implements MessageI
 		public Property(String name, Serializable value)
 		{
 			assert name != null && !name.isEmpty();
-			this.name = name;
+			this.name = name.intern();
 			this.value = value;
 		}
 
+		/**
+		 * Interne le nom des propriétés désérialisées.
+		 *
+		 * @return une propriété au nom interné.
+		 */
+		private Object readResolve()
+		{
+			return new Property(this.name, this.value);
+		}
+
 		/**
 		 * @see fr.sorbonne_u.cps.pubsub.interfaces.MessageI.PropertyI#getName()
 		 */
@@ -168,6 +217,25 @@ public class Message implements MessageI
 		Map<String, Serializable> initialProperties,
 		Instant timeStamp
 		)
+	{
+		this(payload, initialProperties, timeStamp, LAST_ID.incrementAndGet());
+	}
+
+	/**
+	 * Internal constructor used to set an explicit timestamp and identifier,
+	 * when a serialised message is read.
+	 *
+	 * @param payload            payload of the message.
+	 * @param initialProperties  initial properties (may be null).
+	 * @param timeStamp          explicit timestamp (must not be null).
+	 * @param id                 identifier of the message.
+	 */
+	Message(
+		Serializable payload,
+		Map<String, Serializable> initialProperties,
+		Instant timeStamp,
+		long id
+		)
 	{
 		if (timeStamp == null) {
 			throw new IllegalArgumentException("timeStamp cannot be null.");
@@ -175,9 +243,11 @@ public class Message implements MessageI
 
 		this.payload = payload;
 		this.timeStamp = timeStamp;
-		this.properties = new Hashtable<String, PropertyI>();
+		this.id = id;
 
 		if (initialProperties != null && !initialProperties.isEmpty()) {
+			Property[] props = new Property[initialProperties.size()];
+			int n = 0;
 			for (Map.Entry<String, Serializable> e : initialProperties.entrySet()) {
 				String name = e.getKey();
 				Serializable value = e.getValue();
@@ -185,12 +255,12 @@ public class Message implements MessageI
 					throw new IllegalArgumentException(
 						"Property name cannot be null or empty.");
 				}
-				if (this.properties.containsKey(name)) {
-					throw new IllegalArgumentException(
-						"Duplicate property name: " + name);
-				}
-				this.properties.put(name, new Property(name, value));
+				// keys of a map are unique.
+				props[n++] = new Property(name, value);
 			}
+			this.properties = props;
+		} else {
+			this.properties = NO_PROPERTIES;
 		}
 	}
 
@@ -199,19 +269,64 @@ public class Message implements MessageI
 	// -------------------------------------------------------------------------
 
 	/**
-	 * Retourne une vue non modifiable de la table interne des propriétés.
+	 * Retourne une table non modifiable des propriétés indexées par nom.
 	 *
 	 * <p>
-	 * Cette méthode ne fait pas partie de {@link MessageI} ; elle est fournie
-	 * comme aide pour des implémentations (par exemple des filtres) ayant
-	 * besoin d’un accès rapide aux propriétés par nom.
+	 * Cette méthode ne fait pas partie de {@link MessageI}. La table est
+	 * construite à chaque appel : pour rechercher une propriété, préférer
+	 * {@link #getProperty(String)}, qui n’alloue rien.
 	 * </p>
 	 *
-	 * @return vue non modifiable des propriétés internes.
+	 * @return table non modifiable des propriétés.
 	 */
 	public Map<String, PropertyI> getPropertiesMap()
 	{
-		return Collections.unmodifiableMap(this.properties);
+		Property[] props = this.properties;
+		Map<String, PropertyI> ret = new LinkedHashMap<String, PropertyI>(props.length * 2);
+		for (Property p : props) {
+			ret.put(p.getName(), p);
+		}
+		return Collections.unmodifiableMap(ret);
+	}
+
+	/**
+	 * Retourne le nombre de propriétés du message.
+	 *
+	 * @return le nombre de propriétés.
+	 */
+	public int getPropertyCount()
+	{
+		return this.properties.length;
+	}
+
+	/**
+	 * Retourne la propriété de rang {@code i}, dans l’ordre d’ajout ; avec
+	 * {@link #getPropertyCount()}, permet de parcourir les propriétés sans
+	 * copie.
+	 *
+	 * @param i rang de la propriété.
+	 * @return la propriété de rang {@code i}.
+	 */
+	public PropertyI getProperty(int i)
+	{
+		return this.properties[i];
+	}
+
+	/** Retourne le rang de la propriété {@code name} dans {@code props}, ou -1. */
+	private static int indexOf(Property[] props, String name)
+	{
+		// names are interned: usual names are found by reference.
+		for (int i = 0; i < props.length; i++) {
+			if (props[i].name == name) {
+				return i;
+			}
+		}
+		for (int i = 0; i < props.length; i++) {
+			if (props[i].name.equals(name)) {
+				return i;
+			}
+		}
+		return -1;
 	}
 
 	/**
@@ -221,36 +336,46 @@ public class Message implements MessageI
 	public boolean propertyExists(String name)
 	{
 		assert name != null && !name.isEmpty();
-		return this.properties.containsKey(name);
+		return indexOf(this.properties, name) >= 0;
 	}
 
 	/**
 	 * @see fr.sorbonne_u.cps.pubsub.interfaces.MessageI#putProperty(java.lang.String, java.io.Serializable)
 	 */
 	@Override
-	public void putProperty(String name, Serializable value)
+	public synchronized void putProperty(String name, Serializable value)
 	{
 		assert name != null && !name.isEmpty();
+		this.checkNotFrozen();
 
-		if (this.properties.containsKey(name)) {
+		Property[] props = this.properties;
+		if (indexOf(props, name) >= 0) {
 			throw new IllegalArgumentException("Property already exists: " + name);
 		}
 
-		this.properties.put(name, new Property(name, value));
+		Property[] newProps = Arrays.copyOf(props, props.length + 1);
+		newProps[props.length] = new Property(name, value);
+		this.properties = newProps;
 	}
 
 	/**
 	 * @see fr.sorbonne_u.cps.pubsub.interfaces.MessageI#removeProperty(java.lang.String)
 	 */
 	@Override
-	public void removeProperty(String name) throws UnknownPropertyException
+	public synchronized void removeProperty(String name) throws UnknownPropertyException
 	{
 		assert name != null && !name.isEmpty();
+		this.checkNotFrozen();
 
-		if (!this.properties.containsKey(name)) {
+		Property[] props = this.properties;
+		int i = indexOf(props, name);
+		if (i < 0) {
 			throw new UnknownPropertyException(name);
 		}
-		this.properties.remove(name);
+		Property[] newProps = new Property[props.length - 1];
+		System.arraycopy(props, 0, newProps, 0, i);
+		System.arraycopy(props, i + 1, newProps, i, props.length - i - 1);
+		this.properties = newProps;
 	}
 
 	/**
@@ -261,11 +386,31 @@ public class Message implements MessageI
 	{
 		assert name != null && !name.isEmpty();
 
-		PropertyI p = this.properties.get(name);
-		if (p == null) {
+		Property[] props = this.properties;
+		int i = indexOf(props, name);
+		if (i < 0) {
 			throw new UnknownPropertyException(name);
 		}
-		return p.getValue();
+		return props[i].getValue();
+	}
+
+	/**
+	 * Retourne la propriété de nom {@code name}, ou null si elle n’existe pas.
+	 *
+	 * <p>
+	 * Cette méthode ne fait pas partie de {@link MessageI} ; contrairement à
+	 * {@link #getPropertyValue(String)}, elle ne lève pas d’exception et
+	 * n’alloue rien, ce qui en fait l’accès utilisé par les filtres.
+	 * </p>
+	 *
+	 * @param name nom de la propriété.
+	 * @return la propriété, ou null.
+	 */
+	public PropertyI getProperty(String name)
+	{
+		Property[] props = this.properties;
+		int i = indexOf(props, name);
+		return i >= 0 ? props[i] : null;
 	}
 
 	/**
@@ -274,8 +419,8 @@ public class Message implements MessageI
 	@Override
 	public PropertyI[] getProperties()
 	{
-		PropertyI[] ret = this.properties.values().toArray(new PropertyI[0]);
-		return Arrays.copyOf(ret, ret.length);
+		Property[] props = this.properties;
+		return Arrays.copyOf(props, props.length, PropertyI[].class);
 	}
 
 	/**
@@ -285,9 +430,28 @@ public class Message implements MessageI
 	public MessageI copy()
 	{
 		Message copy = new Message(this.payload, this.timeStamp);
-		for (PropertyI p : this.properties.values()) {
-			copy.properties.put(p.getName(), new Property(p.getName(), p.getValue()));
-		}
+		// properties are immutable and their array is never modified; the copy
+		// is not frozen.
+		copy.properties = this.properties;
+		return copy;
+	}
+
+	/**
+	 * Retourne une copie non gelée du message, de même identifiant,
+	 * horodatage et payload, qui partage le tableau des propriétés : en temps
+	 * constant, comme {@link #copy()}, mais sans nouvel identifiant, de sorte
+	 * que la copie représente le même message publié.
+	 *
+	 * <pre>
+	 * post {@code !return.isFrozen() && return.getId() == getId()}
+	 * </pre>
+	 *
+	 * @return une copie modifiable du message, de même identifiant.
+	 */
+	public Message share()
+	{
+		Message copy = new Message(this.payload, null, this.timeStamp, this.id);
+		copy.properties = this.properties;
 		return copy;
 	}
 
@@ -295,11 +459,57 @@ public class Message implements MessageI
 	 * @see fr.sorbonne_u.cps.pubsub.interfaces.MessageI#setPayload(java.io.Serializable)
 	 */
 	@Override
-	public void setPayload(Serializable payload)
+	public synchronized void setPayload(Serializable payload)
 	{
+		this.checkNotFrozen();
 		this.payload = payload;
 	}
 
+	/**
+	 * Gèle le message : ses propriétés et son payload ne peuvent plus être
+	 * remplacés, ce qui permet de le partager entre lecteurs sans copie.
+	 * Sans effet sur un message déjà gelé.
+	 *
+	 * <pre>
+	 * post {@code isFrozen()}
+	 * </pre>
+	 */
+	public synchronized void freeze()
+	{
+		this.frozen = true;
+	}
+
+	/**
+	 * Indique si le message est gelé.
+	 *
+	 * @return vrai si les mutateurs du message lèvent {@link IllegalStateException}.
+	 */
+	public boolean isFrozen()
+	{
+		return this.frozen;
+	}
+
+	/**
+	 * Substitue au message sa forme sérialisée compacte ; les sous-classes,
+	 * qui n’héritent pas de cette méthode privée, gardent la sérialisation
+	 * par défaut.
+	 *
+	 * @return la forme sérialisée du message.
+	 * @throws ObjectStreamException jamais.
+	 */
+	private Object writeReplace() throws ObjectStreamException
+	{
+		return new SerializedMessage(this);
+	}
+
+	/** Lève {@link IllegalStateException} si le message est gelé. */
+	private void checkNotFrozen()
+	{
+		if (this.frozen) {
+			throw new IllegalStateException("frozen message: modify a copy() instead.");
+		}
+	}
+
 	/**
 	 * @see fr.sorbonne_u.cps.pubsub.interfaces.MessageI#getPayload()
 	 */
@@ -317,4 +527,33 @@ public class Message implements MessageI
 	{
 		return this.timeStamp;
 	}
+
+	/**
+	 * Retourne une estimation de la taille, en octets, de la forme sérialisée
+	 * du message ({@link SerializedMessage}), sans la sérialiser : exacte
+	 * pour les valeurs encodées champ par champ, approchée pour les autres.
+	 *
+	 * @return la taille estimée.
+	 */
+	public int estimatedSize()
+	{
+		Serializable p = this.payload;
+		// version, timestamp, id, payload, frozen flag, property count.
+		int size = 1 + 12 + 8 + ValueCodec.estimateSize(p, null) + 1 + 4;
+		for (Property prop : this.properties) {
+			size += ValueCodec.nameSize(prop.name) + ValueCodec.estimateSize(prop.value, p);
+		}
+		return size;
+	}
+
+	/**
+	 * Retourne l’identifiant du message ; une copie ({@link #copy()}) reçoit
+	 * un nouvel identifiant, un message désérialisé garde le sien.
+	 *
+	 * @return l’identifiant du message, jamais 0.
+	 */
+	public long getId()
+	{
+		return this.id;
+	}
 }
@@ -3,11 +3,13 @@ package fr.sorbonne_u.cps.pubsub.messages;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
 import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI;
 import fr.sorbonne_u.cps.pubsub.interfaces.MessageI;
 import fr.sorbonne_u.cps.pubsub.interfaces.MessageI.PropertyI;
 import fr.sorbonne_u.cps.pubsub.messages.filters.AcceptAllTimeFilter;
+import fr.sorbonne_u.cps.pubsub.messages.filters.PropertiesFilter;
 
 /**
  * La classe {@code MessageFilter} implémente {@link MessageFilterI} pour filtrer
@@ -127,6 +129,9 @@ public class MessageFilter implements MessageFilterI
 		if (message == null) {
 			return false;
 		}
+		if (message instanceof Message) {
+			return this.match((Message) message);
+		}
 
 		final Map<String, PropertyI> propsByName = indexProperties(message);
 
@@ -167,6 +172,57 @@ public class MessageFilter implements MessageFilterI
 		return this.timeFilter.match(message.getTimeStamp());
 	}
 
+	/**
+	 * Match a {@link Message} by looking its properties up directly, without
+	 * building any intermediate map; only exact {@link PropertiesFilter}
+	 * instances take this path, as subclasses may override
+	 * {@code match(PropertyI...)}.
+	 *
+	 * @param message message à filtrer (non null).
+	 * @return true si le message est accepté.
+	 */
+	protected boolean match(Message message)
+	{
+		for (PropertyFilterI pf : this.propertyFilters) {
+			if (pf == null) {
+				continue;
+			}
+			PropertyI p = message.getProperty(pf.getName());
+			if (p == null || !pf.match(p)) {
+				return false;
+			}
+		}
+
+		for (PropertiesFilterI mpf : this.propertiesFilters) {
+			if (mpf == null) {
+				continue;
+			}
+			if (mpf.getClass() == PropertiesFilter.class) {
+				if (!((PropertiesFilter) mpf).match(message)) {
+					return false;
+				}
+				continue;
+			}
+			if (mpf.getMultiValuesFilter() == null) {
+				throw new IllegalStateException("PropertiesFilterI has null MultiValuesFilterI.");
+			}
+			String[] required = mpf.getMultiValuesFilter().getNames();
+			PropertyI[] selected = new PropertyI[required.length];
+			for (int i = 0; i < required.length; i++) {
+				PropertyI p = message.getProperty(required[i]);
+				if (p == null) {
+					return false;
+				}
+				selected[i] = p;
+			}
+			if (!mpf.match(selected)) {
+				return false;
+			}
+		}
+
+		return this.timeFilter.match(message.getTimeStamp());
+	}
+
 	/**
 	 * Build an index of properties by name.
 	 *
@@ -186,4 +242,24 @@ public class MessageFilter implements MessageFilterI
 		}
 		return ret;
 	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o) return true;
+		if (o == null || o.getClass() != this.getClass()) return false;
+		MessageFilter that = (MessageFilter) o;
+		return Arrays.equals(this.propertyFilters, that.propertyFilters) &&
+			Arrays.equals(this.propertiesFilters, that.propertiesFilters) &&
+			Objects.equals(this.timeFilter, that.timeFilter);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		int result = Objects.hash(this.timeFilter);
+		result = 31 * result + Arrays.hashCode(this.propertyFilters);
+		result = 31 * result + Arrays.hashCode(this.propertiesFilters);
+		return result;
+	}
 }
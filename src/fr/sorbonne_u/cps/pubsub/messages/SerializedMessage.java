@@ -0,0 +1,110 @@
+package fr.sorbonne_u.cps.pubsub.messages;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.time.Instant;
+
+import fr.sorbonne_u.cps.pubsub.interfaces.MessageI.PropertyI;
+import fr.sorbonne_u.cps.pubsub.messages.codec.ValueCodec;
+
+/**
+ * Forme sérialisée compacte d’un {@link Message}, substituée au message par
+ * {@code Message.writeReplace()} et remplacée par le message reconstruit à
+ * la lecture.
+ *
+ * <p>
+ * Le message est écrit champ par champ avec {@link ValueCodec} : pas de
+ * descripteur de classe par propriété, noms usuels réduits à un octet, et
+ * une propriété dont la valeur est le payload lui-même n’est écrite qu’une
+ * fois.
+ * </p>
+ *
+ * @author Bogdan Styn
+ */
+final class SerializedMessage implements Externalizable
+{
+	private static final long serialVersionUID = 1L;
+
+	/** Version du format, écrite en tête. */
+	private static final byte VERSION = 2;
+
+	/** Message écrit, ou reconstruit à la lecture. */
+	private Message message;
+
+	/** Constructeur requis par {@link Externalizable}. */
+	public SerializedMessage()
+	{
+	}
+
+	SerializedMessage(Message message)
+	{
+		this.message = message;
+	}
+
+	/**
+	 * @see java.io.Externalizable#writeExternal(java.io.ObjectOutput)
+	 */
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException
+	{
+		Message m = this.message;
+		// a consistent view: payload and properties are not replaced meanwhile.
+		synchronized (m) {
+			Serializable payload = m.getPayload();
+			out.writeByte(VERSION);
+			ValueCodec.writeInstant(out, m.getTimeStamp());
+			out.writeLong(m.getId());
+			ValueCodec.writeValue(out, payload, null);
+			out.writeBoolean(m.isFrozen());
+			int n = m.getPropertyCount();
+			out.writeInt(n);
+			for (int i = 0; i < n; i++) {
+				PropertyI p = m.getProperty(i);
+				ValueCodec.writeName(out, p.getName());
+				ValueCodec.writeValue(out, p.getValue(), payload);
+			}
+		}
+	}
+
+	/**
+	 * @see java.io.Externalizable#readExternal(java.io.ObjectInput)
+	 */
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
+	{
+		byte version = in.readByte();
+		if (version != VERSION) {
+			throw new InvalidObjectException("unsupported message format version " + version);
+		}
+		Instant timeStamp = ValueCodec.readInstant(in);
+		long id = in.readLong();
+		Serializable payload = ValueCodec.readValue(in, null);
+		boolean frozen = in.readBoolean();
+		Message m = new Message(payload, null, timeStamp, id);
+		int n = in.readInt();
+		for (int i = 0; i < n; i++) {
+			String name = ValueCodec.readName(in);
+			m.putProperty(name, ValueCodec.readValue(in, payload));
+		}
+		if (frozen) {
+			m.freeze();
+		}
+		this.message = m;
+	}
+
+	/**
+	 * Remplace la forme sérialisée par le message reconstruit.
+	 *
+	 * @return le message lu.
+	 * @throws ObjectStreamException jamais.
+	 */
+	private Object readResolve() throws ObjectStreamException
+	{
+		return this.message;
+	}
+}
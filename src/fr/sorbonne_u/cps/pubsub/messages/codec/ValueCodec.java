@@ -0,0 +1,330 @@
+package fr.sorbonne_u.cps.pubsub.messages.codec;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.Serializable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import fr.sorbonne_u.cps.pubsub.meteo.MeteoAlertI.AlertTypeI;
+import fr.sorbonne_u.cps.pubsub.meteo.MeteoAlertI.LevelI;
+import fr.sorbonne_u.cps.pubsub.meteo.PositionI;
+import fr.sorbonne_u.cps.pubsub.meteo.RegionI;
+import fr.sorbonne_u.cps.pubsub.meteo.impl.CircularRegion;
+import fr.sorbonne_u.cps.pubsub.meteo.impl.MeteoAlert;
+import fr.sorbonne_u.cps.pubsub.meteo.impl.Position2D;
+import fr.sorbonne_u.cps.pubsub.meteo.impl.WindData;
+
+/**
+ * Compact binary encoding of the values carried by messages, used by the
+ * externalised form of {@code Message}.
+ *
+ * <p>
+ * Each value is written as a one byte tag followed by its fields: strings,
+ * boxed primitives, {@link Instant}, {@link Duration} and the meteo model
+ * classes ({@link Position2D}, {@link WindData}, {@link CircularRegion},
+ * {@link MeteoAlert}) are encoded field by field; any other value, including
+ * subclasses of these classes, falls back to {@code writeObject}. A value
+ * which is the very payload of its message is written as a back reference.
+ * Property names of the meteo application are written as an index in a
+ * fixed dictionary.
+ * </p>
+ *
+ * @author Bogdan Styn
+ */
+public final class ValueCodec
+{
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte INTEGER = 2;
+	private static final byte LONG = 3;
+	private static final byte DOUBLE = 4;
+	private static final byte TRUE = 5;
+	private static final byte FALSE = 6;
+	private static final byte INSTANT = 7;
+	private static final byte DURATION = 8;
+	private static final byte POSITION_2D = 9;
+	private static final byte WIND_DATA = 10;
+	private static final byte CIRCULAR_REGION = 11;
+	private static final byte METEO_ALERT = 12;
+	/** The payload of the message being encoded. */
+	private static final byte PAYLOAD = 13;
+	private static final byte OBJECT = 14;
+
+	/** Longest string written with {@code writeUTF} (which needs at most 3 bytes per char). */
+	private static final int MAX_UTF_CHARS = 65535 / 3;
+
+	/** Names written as their index; the order must never change. */
+	private static final String[] DICTIONARY = {
+		"type", "payload", "stationId", "force", "x", "y",
+		"officeId", "level", "alertType", "distance", "premium"
+	};
+	/** Index of the names of {@link #DICTIONARY}. */
+	private static final Map<String, Integer> DICTIONARY_INDEX = new HashMap<>();
+	static {
+		for (int i = 0; i < DICTIONARY.length; i++) {
+			DICTIONARY_INDEX.put(DICTIONARY[i], i);
+		}
+	}
+	/** Marker of a name written in full. */
+	private static final int LITERAL_NAME = 0xFF;
+	/** Size assumed for a value written with {@code writeObject}. */
+	private static final int OBJECT_SIZE = 128;
+
+	private ValueCodec()
+	{
+	}
+
+	/**
+	 * write a property name.
+	 *
+	 * @param out			output stream.
+	 * @param name			name to write (not null).
+	 * @throws IOException	on write errors.
+	 */
+	public static void writeName(ObjectOutput out, String name) throws IOException
+	{
+		Integer i = DICTIONARY_INDEX.get(name);
+		if (i != null) {
+			out.writeByte(i);
+		} else {
+			out.writeByte(LITERAL_NAME);
+			out.writeUTF(name);
+		}
+	}
+
+	/**
+	 * return the number of bytes written by {@link #writeName} for
+	 * {@code name}, assuming it is ASCII.
+	 *
+	 * @param name	name to write (not null).
+	 * @return		its encoded size.
+	 */
+	public static int nameSize(String name)
+	{
+		return DICTIONARY_INDEX.containsKey(name) ? 1 : 3 + name.length();
+	}
+
+	/**
+	 * read a property name written by {@link #writeName}.
+	 *
+	 * @param in			input stream.
+	 * @return				the name.
+	 * @throws IOException	on read errors or unknown dictionary index.
+	 */
+	public static String readName(ObjectInput in) throws IOException
+	{
+		int i = in.readUnsignedByte();
+		if (i == LITERAL_NAME) {
+			return in.readUTF();
+		}
+		if (i >= DICTIONARY.length) {
+			throw new IOException("unknown property name index " + i);
+		}
+		return DICTIONARY[i];
+	}
+
+	/**
+	 * write {@code value}; when it is the same object as {@code payload}, a
+	 * back reference is written instead.
+	 *
+	 * @param out			output stream.
+	 * @param value			value to write (may be null).
+	 * @param payload		payload already written, or null.
+	 * @throws IOException	on write errors.
+	 */
+	public static void writeValue(ObjectOutput out, Object value, Object payload) throws IOException
+	{
+		if (value == null) {
+			out.writeByte(NULL);
+			return;
+		}
+		if (value == payload) {
+			out.writeByte(PAYLOAD);
+			return;
+		}
+		Class<?> c = value.getClass();
+		if (c == String.class && ((String) value).length() <= MAX_UTF_CHARS) {
+			out.writeByte(STRING);
+			out.writeUTF((String) value);
+		} else if (c == Integer.class) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) value);
+		} else if (c == Long.class) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		} else if (c == Double.class) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (c == Boolean.class) {
+			out.writeByte((Boolean) value ? TRUE : FALSE);
+		} else if (c == Instant.class) {
+			out.writeByte(INSTANT);
+			writeInstant(out, (Instant) value);
+		} else if (c == Duration.class) {
+			out.writeByte(DURATION);
+			out.writeLong(((Duration) value).getSeconds());
+			out.writeInt(((Duration) value).getNano());
+		} else if (c == Position2D.class) {
+			out.writeByte(POSITION_2D);
+			out.writeDouble(((Position2D) value).getX());
+			out.writeDouble(((Position2D) value).getY());
+		} else if (c == WindData.class) {
+			WindData w = (WindData) value;
+			out.writeByte(WIND_DATA);
+			writeValue(out, w.getPosition(), payload);
+			out.writeDouble(w.xComponent());
+			out.writeDouble(w.yComponent());
+		} else if (c == CircularRegion.class) {
+			CircularRegion r = (CircularRegion) value;
+			out.writeByte(CIRCULAR_REGION);
+			out.writeDouble(r.getCenter().getX());
+			out.writeDouble(r.getCenter().getY());
+			out.writeDouble(r.getRadius());
+		} else if (c == MeteoAlert.class) {
+			MeteoAlert a = (MeteoAlert) value;
+			out.writeByte(METEO_ALERT);
+			// enumerations: only their name after the first occurrence.
+			out.writeObject(a.getAlertType());
+			out.writeObject(a.getLevel());
+			RegionI[] regions = a.getRegions();
+			out.writeInt(regions.length);
+			for (RegionI r : regions) {
+				writeValue(out, r, payload);
+			}
+			writeInstant(out, a.getStartTime());
+			out.writeLong(a.getDuration().getSeconds());
+			out.writeInt(a.getDuration().getNano());
+		} else {
+			out.writeByte(OBJECT);
+			out.writeObject(value);
+		}
+	}
+
+	/**
+	 * return an estimate of the number of bytes written by
+	 * {@link #writeValue}: exact for the tagged values and ASCII strings, a
+	 * fixed guess for the values written with {@code writeObject}.
+	 *
+	 * @param value		value to write (may be null).
+	 * @param payload	payload already written, or null.
+	 * @return			its estimated encoded size.
+	 */
+	public static int estimateSize(Object value, Object payload)
+	{
+		if (value == null || value == payload) {
+			return 1;
+		}
+		Class<?> c = value.getClass();
+		if (c == String.class && ((String) value).length() <= MAX_UTF_CHARS) {
+			return 3 + ((String) value).length();
+		} else if (c == Integer.class) {
+			return 5;
+		} else if (c == Long.class || c == Double.class) {
+			return 9;
+		} else if (c == Boolean.class) {
+			return 1;
+		} else if (c == Instant.class || c == Duration.class) {
+			return 13;
+		} else if (c == Position2D.class) {
+			return 17;
+		} else if (c == WindData.class) {
+			return 17 + estimateSize(((WindData) value).getPosition(), payload);
+		} else if (c == CircularRegion.class) {
+			return 25;
+		} else if (c == MeteoAlert.class) {
+			int size = 1 + 2 * OBJECT_SIZE + 4 + 24;
+			for (RegionI r : ((MeteoAlert) value).getRegions()) {
+				size += estimateSize(r, payload);
+			}
+			return size;
+		}
+		return 1 + OBJECT_SIZE;
+	}
+
+	/**
+	 * read a value written by {@link #writeValue}.
+	 *
+	 * @param in						input stream.
+	 * @param payload					payload already read, or null.
+	 * @return							the value.
+	 * @throws IOException				on read errors or unknown tag.
+	 * @throws ClassNotFoundException	when the class of a value is unknown.
+	 */
+	public static Serializable readValue(ObjectInput in, Serializable payload)
+	throws IOException, ClassNotFoundException
+	{
+		byte tag = in.readByte();
+		switch (tag) {
+			case NULL:
+				return null;
+			case PAYLOAD:
+				return payload;
+			case STRING:
+				return in.readUTF();
+			case INTEGER:
+				return in.readInt();
+			case LONG:
+				return in.readLong();
+			case DOUBLE:
+				return in.readDouble();
+			case TRUE:
+				return Boolean.TRUE;
+			case FALSE:
+				return Boolean.FALSE;
+			case INSTANT:
+				return readInstant(in);
+			case DURATION:
+				return Duration.ofSeconds(in.readLong(), in.readInt());
+			case POSITION_2D:
+				return new Position2D(in.readDouble(), in.readDouble());
+			case WIND_DATA:
+				PositionI position = (PositionI) readValue(in, payload);
+				return new WindData(position, in.readDouble(), in.readDouble());
+			case CIRCULAR_REGION:
+				Position2D center = new Position2D(in.readDouble(), in.readDouble());
+				return new CircularRegion(center, in.readDouble());
+			case METEO_ALERT:
+				AlertTypeI alertType = (AlertTypeI) in.readObject();
+				LevelI level = (LevelI) in.readObject();
+				RegionI[] regions = new RegionI[in.readInt()];
+				for (int i = 0; i < regions.length; i++) {
+					regions[i] = (RegionI) readValue(in, payload);
+				}
+				Instant start = readInstant(in);
+				return new MeteoAlert(alertType, level, regions, start, Duration.ofSeconds(in.readLong(), in.readInt()));
+			case OBJECT:
+				return (Serializable) in.readObject();
+			default:
+				throw new IOException("unknown value tag " + tag);
+		}
+	}
+
+	/**
+	 * write an instant (not null).
+	 *
+	 * @param out			output stream.
+	 * @param instant		instant to write.
+	 * @throws IOException	on write errors.
+	 */
+	public static void writeInstant(ObjectOutput out, Instant instant) throws IOException
+	{
+		out.writeLong(instant.getEpochSecond());
+		out.writeInt(instant.getNano());
+	}
+
+	/**
+	 * read an instant written by {@link #writeInstant}.
+	 *
+	 * @param in			input stream.
+	 * @return				the instant.
+	 * @throws IOException	on read errors.
+	 */
+	public static Instant readInstant(ObjectInput in) throws IOException
+	{
+		return Instant.ofEpochSecond(in.readLong(), in.readInt());
+	}
+}
@@ -19,4 +19,17 @@ public class AcceptAllTimeFilter implements TimeFilterI
 	{
 		return true;
 	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		// stateless: all the instances of a class accept the same values.
+		return o != null && o.getClass() == this.getClass();
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return this.getClass().hashCode();
+	}
 }
@@ -1,6 +1,7 @@
 package fr.sorbonne_u.cps.pubsub.messages.filters;
 
 import java.time.Instant;
+import java.util.Objects;
 
 import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI.TimeFilterI;
 
@@ -32,4 +33,19 @@ public class AfterOrAtTimeFilter implements TimeFilterI
 		}
 		return !timestamp.isBefore(this.lowerBoundInclusive);
 	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o) return true;
+		if (o == null || o.getClass() != this.getClass()) return false;
+		AfterOrAtTimeFilter that = (AfterOrAtTimeFilter) o;
+		return Objects.equals(this.lowerBoundInclusive, that.lowerBoundInclusive);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(this.lowerBoundInclusive);
+	}
 }
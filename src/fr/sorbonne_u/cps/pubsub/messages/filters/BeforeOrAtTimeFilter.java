@@ -1,6 +1,7 @@
 package fr.sorbonne_u.cps.pubsub.messages.filters;
 
 import java.time.Instant;
+import java.util.Objects;
 
 import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI.TimeFilterI;
 
@@ -32,4 +33,19 @@ public class BeforeOrAtTimeFilter implements TimeFilterI
 		}
 		return !timestamp.isAfter(this.upperBoundInclusive);
 	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o) return true;
+		if (o == null || o.getClass() != this.getClass()) return false;
+		BeforeOrAtTimeFilter that = (BeforeOrAtTimeFilter) o;
+		return Objects.equals(this.upperBoundInclusive, that.upperBoundInclusive);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(this.upperBoundInclusive);
+	}
 }
@@ -1,6 +1,7 @@
 package fr.sorbonne_u.cps.pubsub.messages.filters;
 
 import java.time.Instant;
+import java.util.Objects;
 
 import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI.TimeFilterI;
 
@@ -38,4 +39,20 @@ public class BetweenTimeFilter implements TimeFilterI
 		}
 		return !timestamp.isBefore(this.startInclusive) && !timestamp.isAfter(this.endInclusive);
 	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o) return true;
+		if (o == null || o.getClass() != this.getClass()) return false;
+		BetweenTimeFilter that = (BetweenTimeFilter) o;
+		return Objects.equals(this.startInclusive, that.startInclusive) &&
+			Objects.equals(this.endInclusive, that.endInclusive);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(this.startInclusive, this.endInclusive);
+	}
 }
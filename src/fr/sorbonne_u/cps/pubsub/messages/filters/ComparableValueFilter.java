@@ -1,6 +1,7 @@
 package fr.sorbonne_u.cps.pubsub.messages.filters;
 
 import java.io.Serializable;
+import java.util.Objects;
 
 import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI.ValueFilterI;
 
@@ -77,6 +78,24 @@ public class ComparableValueFilter implements ValueFilterI
 			upperBoundInclusive);
 	}
 
+	public Operator getOperator()
+	{
+		return this.operator;
+	}
+
+	public Comparable<?> getBound1()
+	{
+		return this.bound1;
+	}
+
+	/**
+	 * @return the second bound; null unless the operator is BETWEEN_INCLUSIVE.
+	 */
+	public Comparable<?> getBound2()
+	{
+		return this.bound2;
+	}
+
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	@Override
 	public boolean match(Serializable value)
@@ -101,4 +120,21 @@ public class ComparableValueFilter implements ValueFilterI
 				return false;
 		}
 	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o) return true;
+		if (o == null || o.getClass() != this.getClass()) return false;
+		ComparableValueFilter that = (ComparableValueFilter) o;
+		return Objects.equals(this.operator, that.operator) &&
+			Objects.equals(this.bound1, that.bound1) &&
+			Objects.equals(this.bound2, that.bound2);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(this.operator, this.bound1, this.bound2);
+	}
 }
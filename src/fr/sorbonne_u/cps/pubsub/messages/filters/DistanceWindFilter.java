@@ -6,6 +6,7 @@ import fr.sorbonne_u.cps.pubsub.meteo.WindDataI;
 import fr.sorbonne_u.cps.pubsub.meteo.impl.Position2D;
 
 import java.io.Serializable;
+import java.util.Objects;
 
 /**
  * Value filter for wind payloads that enforces a maximum distance to a reference position.
@@ -51,6 +52,16 @@ public class DistanceWindFilter implements MessageFilterI.ValueFilterI
 		this.maxDistance = maxDistance;
 	}
 
+	public PositionI getReferencePosition()
+	{
+		return this.referencePosition;
+	}
+
+	public double getMaxDistance()
+	{
+		return this.maxDistance;
+	}
+
 	@Override
 	public boolean match(Serializable value)
 	{
@@ -74,4 +85,20 @@ public class DistanceWindFilter implements MessageFilterI.ValueFilterI
 		}
 		return Double.POSITIVE_INFINITY;
 	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o) return true;
+		if (o == null || o.getClass() != this.getClass()) return false;
+		DistanceWindFilter that = (DistanceWindFilter) o;
+		return Objects.equals(this.referencePosition, that.referencePosition) &&
+			Double.compare(this.maxDistance, that.maxDistance) == 0;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(this.referencePosition, this.maxDistance);
+	}
 }
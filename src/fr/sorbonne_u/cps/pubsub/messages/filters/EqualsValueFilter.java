@@ -1,6 +1,7 @@
 package fr.sorbonne_u.cps.pubsub.messages.filters;
 
 import java.io.Serializable;
+import java.util.Objects;
 
 import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI.ValueFilterI;
 
@@ -28,6 +29,16 @@ public class EqualsValueFilter implements ValueFilterI
 		this.expected = expected;
 	}
 
+	/**
+	 * Retourne la valeur attendue.
+	 *
+	 * @return la valeur attendue (peut être null).
+	 */
+	public Serializable getExpected()
+	{
+		return this.expected;
+	}
+
 	@Override
 	public boolean match(Serializable value)
 	{
@@ -36,4 +47,19 @@ public class EqualsValueFilter implements ValueFilterI
 		}
 		return this.expected.equals(value);
 	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o) return true;
+		if (o == null || o.getClass() != this.getClass()) return false;
+		EqualsValueFilter that = (EqualsValueFilter) o;
+		return Objects.equals(this.expected, that.expected);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(this.expected);
+	}
 }
@@ -3,10 +3,12 @@ package fr.sorbonne_u.cps.pubsub.messages.filters;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
 import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI.MultiValuesFilterI;
 import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI.PropertiesFilterI;
 import fr.sorbonne_u.cps.pubsub.interfaces.MessageI.PropertyI;
+import fr.sorbonne_u.cps.pubsub.messages.Message;
 
 /**
  * An implementation of {@link PropertiesFilterI}.
@@ -24,6 +26,8 @@ public class PropertiesFilter implements PropertiesFilterI
 	private static final long serialVersionUID = 1L;
 
 	protected final MultiValuesFilterI multiValuesFilter;
+	/** Names of the filtered properties, cached from the multi-values filter. */
+	private transient String[] names;
 
 	public PropertiesFilter(MultiValuesFilterI multiValuesFilter)
 	{
@@ -64,4 +68,46 @@ public class PropertiesFilter implements PropertiesFilterI
 
 		return this.multiValuesFilter.match(values);
 	}
+
+	/**
+	 * Match the properties of {@code message} without building intermediate
+	 * maps: values are looked up by name in a fresh array, which the
+	 * multi-values filter may retain.
+	 *
+	 * @param message message whose properties are filtered.
+	 * @return true if all the properties exist and are accepted, false otherwise.
+	 */
+	public boolean match(Message message)
+	{
+		String[] names = this.names;
+		if (names == null) {
+			names = this.multiValuesFilter.getNames();
+			this.names = names;
+		}
+
+		Serializable[] values = new Serializable[names.length];
+		for (int i = 0; i < names.length; i++) {
+			PropertyI p = message.getProperty(names[i]);
+			if (p == null) {
+				return false;
+			}
+			values[i] = p.getValue();
+		}
+		return this.multiValuesFilter.match(values);
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o) return true;
+		if (o == null || o.getClass() != this.getClass()) return false;
+		PropertiesFilter that = (PropertiesFilter) o;
+		return Objects.equals(this.multiValuesFilter, that.multiValuesFilter);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(this.multiValuesFilter);
+	}
 }
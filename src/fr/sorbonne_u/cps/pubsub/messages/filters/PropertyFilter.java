@@ -1,5 +1,7 @@
 package fr.sorbonne_u.cps.pubsub.messages.filters;
 
+import java.util.Objects;
+
 import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI.PropertyFilterI;
 import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI.ValueFilterI;
 import fr.sorbonne_u.cps.pubsub.interfaces.MessageI.PropertyI;
@@ -57,4 +59,20 @@ public class PropertyFilter implements PropertyFilterI
 		}
 		return this.valueFilter.match(property.getValue());
 	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o) return true;
+		if (o == null || o.getClass() != this.getClass()) return false;
+		PropertyFilter that = (PropertyFilter) o;
+		return Objects.equals(this.name, that.name) &&
+			Objects.equals(this.valueFilter, that.valueFilter);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(this.name, this.valueFilter);
+	}
 }
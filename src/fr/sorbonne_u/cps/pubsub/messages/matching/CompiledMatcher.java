@@ -0,0 +1,21 @@
+package fr.sorbonne_u.cps.pubsub.messages.matching;
+
+import fr.sorbonne_u.cps.pubsub.messages.Message;
+
+/**
+ * Matcher generated by {@link MatcherCompiler} for a set of filters.
+ *
+ * @author Bogdan Styn
+ */
+public interface CompiledMatcher
+{
+	/**
+	 * return the result of the filter of rank {@code filter} in the compiled
+	 * set on {@code message}.
+	 *
+	 * @param filter	rank of the filter in the array given to the compiler.
+	 * @param message	message to match (not null).
+	 * @return			true if the filter accepts {@code message}.
+	 */
+	boolean match(int filter, Message message);
+}
@@ -0,0 +1,138 @@
+package fr.sorbonne_u.cps.pubsub.messages.matching;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Immutable centered interval tree answering stabbing queries (all the
+ * intervals containing a value) in O(log n + k).
+ *
+ * <p>
+ * Intervals are closed; a null bound stands for an infinite one. All the
+ * finite bounds of a tree must be mutually comparable, i.e. of the same
+ * class, and intervals must not be empty.
+ * </p>
+ *
+ * @param <T>	type of the items attached to the intervals.
+ *
+ * @author Bogdan Styn
+ */
+final class IntervalTree<T>
+{
+	/** A closed interval and its item; null bounds are infinite. */
+	static final class Interval<T>
+	{
+		final Comparable<Object> low;
+		final Comparable<Object> high;
+		final T item;
+
+		@SuppressWarnings("unchecked")
+		Interval(Comparable<?> low, Comparable<?> high, T item)
+		{
+			this.low = (Comparable<Object>) low;
+			this.high = (Comparable<Object>) high;
+			this.item = item;
+		}
+	}
+
+	/** Center of the node; the intervals of the node contain it. */
+	private final Comparable<Object> center;
+	/** Intervals containing {@code center}, by increasing low bound. */
+	private final Interval<T>[] byLow;
+	/** Intervals containing {@code center}, by decreasing high bound. */
+	private final Interval<T>[] byHigh;
+	/** Intervals entirely before {@code center} (may be null). */
+	private final IntervalTree<T> left;
+	/** Intervals entirely after {@code center} (may be null). */
+	private final IntervalTree<T> right;
+
+	@SuppressWarnings("unchecked")
+	private IntervalTree(List<Interval<T>> intervals)
+	{
+		this.center = median(intervals);
+		List<Interval<T>> here = new ArrayList<>();
+		List<Interval<T>> before = new ArrayList<>();
+		List<Interval<T>> after = new ArrayList<>();
+		for (Interval<T> i : intervals) {
+			if (i.high != null && i.high.compareTo(this.center) < 0) {
+				before.add(i);
+			} else if (i.low != null && i.low.compareTo(this.center) > 0) {
+				after.add(i);
+			} else {
+				here.add(i);
+			}
+		}
+		this.byLow = here.toArray((Interval<T>[]) new Interval<?>[here.size()]);
+		Arrays.sort(this.byLow, Comparator.comparing(i -> i.low, Comparator.nullsFirst(Comparator.naturalOrder())));
+		this.byHigh = here.toArray((Interval<T>[]) new Interval<?>[here.size()]);
+		Arrays.sort(this.byHigh, Comparator.comparing(i -> i.high, Comparator.nullsFirst(Comparator.<Comparable<Object>>reverseOrder())));
+		this.left = before.isEmpty() ? null : new IntervalTree<>(before);
+		this.right = after.isEmpty() ? null : new IntervalTree<>(after);
+	}
+
+	/**
+	 * build the tree of {@code intervals}.
+	 *
+	 * @param intervals	non empty intervals, with at least one finite bound each.
+	 * @return			the tree, or null if {@code intervals} is empty.
+	 */
+	static <T> IntervalTree<T> build(List<Interval<T>> intervals)
+	{
+		return intervals.isEmpty() ? null : new IntervalTree<>(intervals);
+	}
+
+	/**
+	 * give to {@code action} the item of every interval containing
+	 * {@code value}.
+	 */
+	void stab(Comparable<Object> value, Consumer<? super T> action)
+	{
+		IntervalTree<T> n = this;
+		while (n != null) {
+			int c = value.compareTo(n.center);
+			if (c < 0) {
+				// every interval of the node ends at or after value.
+				for (Interval<T> i : n.byLow) {
+					if (i.low != null && i.low.compareTo(value) > 0) {
+						break;
+					}
+					action.accept(i.item);
+				}
+				n = n.left;
+			} else if (c > 0) {
+				// every interval of the node starts at or before value.
+				for (Interval<T> i : n.byHigh) {
+					if (i.high != null && i.high.compareTo(value) < 0) {
+						break;
+					}
+					action.accept(i.item);
+				}
+				n = n.right;
+			} else {
+				for (Interval<T> i : n.byLow) {
+					action.accept(i.item);
+				}
+				return;
+			}
+		}
+	}
+
+	/** Return the median of the finite bounds of {@code intervals}. */
+	private static <T> Comparable<Object> median(List<Interval<T>> intervals)
+	{
+		List<Comparable<Object>> bounds = new ArrayList<>(2 * intervals.size());
+		for (Interval<T> i : intervals) {
+			if (i.low != null) {
+				bounds.add(i.low);
+			}
+			if (i.high != null) {
+				bounds.add(i.high);
+			}
+		}
+		bounds.sort(null);
+		return bounds.get(bounds.size() / 2);
+	}
+}
@@ -0,0 +1,299 @@
+package fr.sorbonne_u.cps.pubsub.messages.matching;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI;
+import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI.PropertiesFilterI;
+import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI.PropertyFilterI;
+import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI.TimeFilterI;
+import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI.ValueFilterI;
+import fr.sorbonne_u.cps.pubsub.messages.MessageFilter;
+import fr.sorbonne_u.cps.pubsub.messages.filters.AcceptAllTimeFilter;
+import fr.sorbonne_u.cps.pubsub.messages.filters.AcceptAllValueFilter;
+import fr.sorbonne_u.cps.pubsub.messages.filters.ComparableValueFilter;
+import fr.sorbonne_u.cps.pubsub.messages.filters.EqualsValueFilter;
+import fr.sorbonne_u.cps.pubsub.messages.filters.PropertiesFilter;
+import fr.sorbonne_u.cps.pubsub.messages.filters.PropertyFilter;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+/**
+ * Compiler of a set of filters into one {@link CompiledMatcher} class
+ * generated with javassist.
+ *
+ * <p>
+ * Each {@link MessageFilter} becomes a method looking its properties up
+ * directly on the {@code Message}, with {@link EqualsValueFilter} values and
+ * {@link ComparableValueFilter} bounds of class {@code String},
+ * {@code Integer}, {@code Long}, {@code Double} (and {@code Boolean} for
+ * equality) folded into the code as constants. Any other filter, or part of
+ * a filter, is called from the generated code, so that the compiled matcher
+ * always returns what the filters would.
+ * </p>
+ * <p>
+ * Each compiled matcher is defined by its own class loader so that its class
+ * is unloaded when the matcher is no longer used.
+ * </p>
+ *
+ * @author Bogdan Styn
+ */
+public final class MatcherCompiler
+{
+	/** Number of filters dispatched by one switch. */
+	private static final int CHUNK = 256;
+
+	private static final String MESSAGE = "fr.sorbonne_u.cps.pubsub.messages.Message";
+	private static final String PROPERTY = "fr.sorbonne_u.cps.pubsub.interfaces.MessageI$PropertyI";
+	private static final String MESSAGE_I = "fr.sorbonne_u.cps.pubsub.interfaces.MessageI";
+	private static final String FILTER = MessageFilterI.class.getName();
+	private static final String VALUE_FILTER = ValueFilterI.class.getName();
+	private static final String PROPERTY_FILTER = PropertyFilterI.class.getName();
+	private static final String TIME_FILTER = TimeFilterI.class.getName();
+	private static final String PROPERTIES_FILTER = PropertiesFilter.class.getName();
+
+	/** Suffix of the generated class names. */
+	private static final AtomicLong COUNTER = new AtomicLong();
+	/** Class pool, guarded by itself (javassist pools are not thread safe). */
+	private static final ClassPool POOL = new ClassPool(true);
+	static {
+		POOL.appendClassPath(new LoaderClassPath(MatcherCompiler.class.getClassLoader()));
+	}
+
+	/** Class loader of one generated matcher. */
+	private static final class GeneratedLoader extends ClassLoader
+	{
+		GeneratedLoader(ClassLoader parent)
+		{
+			super(parent);
+		}
+
+		Class<?> define(String name, byte[] code)
+		{
+			return this.defineClass(name, code, 0, code.length);
+		}
+	}
+
+	private MatcherCompiler()
+	{
+	}
+
+	/**
+	 * compile {@code filters} into a matcher; {@code match(i, m)} returns the
+	 * result of {@code filters[i]} on {@code m} (false for a null filter).
+	 *
+	 * @param filters		filters to compile.
+	 * @return				the compiled matcher.
+	 * @throws Exception	if the code cannot be generated or loaded.
+	 */
+	public static CompiledMatcher compile(MessageFilterI[] filters) throws Exception
+	{
+		ArrayList<Object> constants = new ArrayList<>();
+		String[] methods = new String[filters.length];
+		for (int i = 0; i < filters.length; i++) {
+			methods[i] = "private boolean f" + i + "(" + MESSAGE + " m) "
+				+ filterBody(filters[i], constants);
+		}
+
+		String simpleName = "ChannelMatcher" + COUNTER.incrementAndGet();
+		String name = MatcherCompiler.class.getPackage().getName() + ".generated." + simpleName;
+		byte[] code;
+		synchronized (POOL) {
+			CtClass cc = POOL.makeClass(name);
+			try {
+				cc.addInterface(POOL.get(CompiledMatcher.class.getName()));
+				cc.addField(CtField.make("private final Object[] c;", cc));
+				cc.addConstructor(CtNewConstructor.make(
+					"public " + simpleName + "(Object[] c) { this.c = c; }", cc));
+				for (String m : methods) {
+					cc.addMethod(CtNewMethod.make(m, cc));
+				}
+				int chunks = (filters.length + CHUNK - 1) / CHUNK;
+				for (int q = 0; q < chunks; q++) {
+					StringBuilder d = new StringBuilder();
+					d.append("private boolean d").append(q).append("(int i, ").append(MESSAGE).append(" m) { switch (i) {");
+					for (int i = q * CHUNK; i < Math.min(filters.length, (q + 1) * CHUNK); i++) {
+						d.append(" case ").append(i).append(": return f").append(i).append("(m);");
+					}
+					d.append(" default: throw new IllegalArgumentException(\"unknown filter \" + i); } }");
+					cc.addMethod(CtNewMethod.make(d.toString(), cc));
+				}
+				StringBuilder top = new StringBuilder();
+				top.append("public boolean match(int i, ").append(MESSAGE).append(" m) { switch (i / ").append(CHUNK).append(") {");
+				for (int q = 0; q < chunks; q++) {
+					top.append(" case ").append(q).append(": return d").append(q).append("(i, m);");
+				}
+				top.append(" default: throw new IllegalArgumentException(\"unknown filter \" + i); } }");
+				cc.addMethod(CtNewMethod.make(top.toString(), cc));
+				code = cc.toBytecode();
+			} finally {
+				cc.detach();
+			}
+		}
+
+		Class<?> k = new GeneratedLoader(MatcherCompiler.class.getClassLoader()).define(name, code);
+		return (CompiledMatcher) k.getConstructor(Object[].class).newInstance((Object) constants.toArray());
+	}
+
+	// -------------------------------------------------------------------------
+	// Code generation
+	// -------------------------------------------------------------------------
+
+	/** Return the body of the method evaluating {@code f}. */
+	private static String filterBody(MessageFilterI f, ArrayList<Object> constants)
+	{
+		if (f == null) {
+			return "{ return false; }";
+		}
+		String delegate =
+			"{ return ((" + FILTER + ") " + constant(f, constants) + ").match((" + MESSAGE_I + ") m); }";
+		if (f.getClass() != MessageFilter.class) {
+			return delegate;
+		}
+
+		StringBuilder b = new StringBuilder("{ " + PROPERTY + " p; java.io.Serializable v;");
+		for (PropertyFilterI pf : f.getPropertyFilters()) {
+			if (pf == null) {
+				continue;
+			}
+			b.append(" p = m.getProperty(").append(literal(pf.getName(), constants)).append(");");
+			if (pf.getClass() == PropertyFilter.class) {
+				b.append(" if (p == null) return false; v = p.getValue();");
+				b.append(" if (!(").append(valueTest(pf.getValueFilter(), constants)).append(")) return false;");
+			} else {
+				b.append(" if (p == null || !((").append(PROPERTY_FILTER).append(") ")
+				 .append(constant(pf, constants)).append(").match(p)) return false;");
+			}
+		}
+		for (PropertiesFilterI mpf : f.getPropertiesFilters()) {
+			if (mpf == null) {
+				continue;
+			}
+			if (mpf.getClass() != PropertiesFilter.class) {
+				return delegate;
+			}
+			b.append(" if (!((").append(PROPERTIES_FILTER).append(") ")
+			 .append(constant(mpf, constants)).append(").match(m)) return false;");
+		}
+		TimeFilterI tf = f.getTimeFilter();
+		if (tf.getClass() == AcceptAllTimeFilter.class) {
+			b.append(" return true; }");
+		} else {
+			b.append(" return ((").append(TIME_FILTER).append(") ")
+			 .append(constant(tf, constants)).append(").match(m.getTimeStamp()); }");
+		}
+		return b.toString();
+	}
+
+	/** Return a boolean expression on {@code v} equivalent to {@code vf.match(v)}. */
+	private static String valueTest(ValueFilterI vf, ArrayList<Object> constants)
+	{
+		String delegate = "((" + VALUE_FILTER + ") " + constant(vf, constants) + ").match(v)";
+		if (vf.getClass() == AcceptAllValueFilter.class) {
+			return "true";
+		}
+		if (vf.getClass() == EqualsValueFilter.class) {
+			Object e = ((EqualsValueFilter) vf).getExpected();
+			if (e == null) {
+				return "v == null";
+			}
+			if (e instanceof String && isPlain((String) e)) {
+				return "\"" + e + "\".equals(v)";
+			}
+			if (e instanceof Boolean) {
+				return "(v instanceof java.lang.Boolean && ((java.lang.Boolean) v).booleanValue() == " + e + ")";
+			}
+			if (e instanceof Double) {
+				// Double.equals compares the bit patterns.
+				long bits = Double.doubleToLongBits((Double) e);
+				if (bits != Long.MIN_VALUE) {
+					return "(v instanceof java.lang.Double && java.lang.Double.doubleToLongBits("
+						+ "((java.lang.Double) v).doubleValue()) == " + bits + "L)";
+				}
+				return delegate;
+			}
+			String test = numericTest(e, "==");
+			return test != null ? test : delegate;
+		}
+		if (vf.getClass() == ComparableValueFilter.class) {
+			ComparableValueFilter cf = (ComparableValueFilter) vf;
+			Comparable<?> b1 = cf.getBound1();
+			Comparable<?> b2 = cf.getBound2();
+			String t1, t2;
+			switch (cf.getOperator()) {
+				case GE:
+					t1 = compareTest(b1, ">=");
+					return t1 != null ? t1 : delegate;
+				case LE:
+					t1 = compareTest(b1, "<=");
+					return t1 != null ? t1 : delegate;
+				case BETWEEN_INCLUSIVE:
+					t1 = compareTest(b1, ">=");
+					t2 = b2 != null && b2.getClass() == b1.getClass() ? compareTest(b2, "<=") : null;
+					return t1 != null && t2 != null ? "(" + t1 + " && " + t2 + ")" : delegate;
+				default:
+					return delegate;
+			}
+		}
+		return delegate;
+	}
+
+	/**
+	 * Return a boolean expression on {@code v} equivalent to
+	 * {@code v.compareTo(bound) op 0}, or null if {@code bound} cannot be
+	 * folded; a value of another class never matches (compareTo throws).
+	 */
+	private static String compareTest(Comparable<?> bound, String op)
+	{
+		if (bound instanceof String && isPlain((String) bound)) {
+			return "(v instanceof java.lang.String && ((java.lang.String) v).compareTo(\""
+				+ bound + "\") " + op + " 0)";
+		}
+		if (bound instanceof Double && Double.isFinite((Double) bound)) {
+			return "(v instanceof java.lang.Double && java.lang.Double.compare("
+				+ "((java.lang.Double) v).doubleValue(), " + bound + "d) " + op + " 0)";
+		}
+		return numericTest(bound, op);
+	}
+
+	/** Return a test of {@code v op n} for an Integer or Long {@code n}, or null. */
+	private static String numericTest(Object n, String op)
+	{
+		if (n instanceof Integer && (Integer) n != Integer.MIN_VALUE) {
+			return "(v instanceof java.lang.Integer && ((java.lang.Integer) v).intValue() " + op + " " + n + ")";
+		}
+		if (n instanceof Long && (Long) n != Long.MIN_VALUE) {
+			return "(v instanceof java.lang.Long && ((java.lang.Long) v).longValue() " + op + " " + n + "L)";
+		}
+		return null;
+	}
+
+	/** Return an expression for the string {@code s}. */
+	private static String literal(String s, ArrayList<Object> constants)
+	{
+		return s != null && isPlain(s) ? "\"" + s + "\"" : "((String) " + constant(s, constants) + ")";
+	}
+
+	/** Return true if {@code s} can be written as is in a string literal. */
+	private static boolean isPlain(String s)
+	{
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < 0x20 || c > 0x7E || c == '"' || c == '\\') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Return an expression reading the constant {@code o}. */
+	private static String constant(Object o, ArrayList<Object> constants)
+	{
+		constants.add(o);
+		return "c[" + (constants.size() - 1) + "]";
+	}
+}
@@ -0,0 +1,148 @@
+package fr.sorbonne_u.cps.pubsub.messages.matching;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Immutable uniform grid of discs answering point queries: a point query
+ * returns the discs whose bounding box cell range contains the cell of the
+ * point, i.e. a superset of the discs containing the point.
+ *
+ * <p>
+ * The cell size is the median radius of the discs, so that a typical disc
+ * covers a handful of cells; discs covering more than {@link #MAX_CELLS}
+ * cells are not accepted by {@link #fits} and must be handled elsewhere.
+ * </p>
+ *
+ * @param <T>	type of the items attached to the discs.
+ *
+ * @author Bogdan Styn
+ */
+final class SpatialGrid<T>
+{
+	/** Maximum number of cells a disc may cover to be indexed. */
+	static final int MAX_CELLS = 64;
+
+	/** A disc and its item. */
+	static final class Disc<T>
+	{
+		final double x;
+		final double y;
+		final double radius;
+		final T item;
+
+		Disc(double x, double y, double radius, T item)
+		{
+			this.x = x;
+			this.y = y;
+			this.radius = radius;
+			this.item = item;
+		}
+	}
+
+	/** Side of the cells. */
+	private final double cellSize;
+	/** Cells: packed cell coordinates -> items of the discs covering it. */
+	private final Map<Long, Object[]> cells;
+
+	private SpatialGrid(double cellSize, Map<Long, Object[]> cells)
+	{
+		this.cellSize = cellSize;
+		this.cells = cells;
+	}
+
+	/**
+	 * return the cell size suited to {@code radii}.
+	 */
+	static double cellSize(double[] radii)
+	{
+		double[] positive = Arrays.stream(radii).filter(r -> r > 0.0).sorted().toArray();
+		return positive.length == 0 ? 1.0 : positive[positive.length / 2];
+	}
+
+	/**
+	 * return true if {@code d} can be indexed in a grid of cells of side
+	 * {@code cellSize}.
+	 */
+	static boolean fits(Disc<?> d, double cellSize)
+	{
+		if (!Double.isFinite(d.x) || !Double.isFinite(d.y) || !Double.isFinite(d.radius)) {
+			return false;
+		}
+		double r = margin(d);
+		long w = cell(d.x + r, cellSize) - cell(d.x - r, cellSize) + 1;
+		long h = cell(d.y + r, cellSize) - cell(d.y - r, cellSize) + 1;
+		return w > 0 && h > 0 && w * h <= MAX_CELLS
+			&& Math.abs(cell(Math.abs(d.x) + r, cellSize)) < Integer.MAX_VALUE
+			&& Math.abs(cell(Math.abs(d.y) + r, cellSize)) < Integer.MAX_VALUE;
+	}
+
+	/**
+	 * build the grid of {@code discs}, all of which must fit.
+	 *
+	 * @return	the grid, or null if {@code discs} is empty.
+	 */
+	static <T> SpatialGrid<T> build(List<Disc<T>> discs, double cellSize)
+	{
+		if (discs.isEmpty()) {
+			return null;
+		}
+		Map<Long, List<T>> cells = new HashMap<>();
+		for (Disc<T> d : discs) {
+			double r = margin(d);
+			long x0 = cell(d.x - r, cellSize), x1 = cell(d.x + r, cellSize);
+			long y0 = cell(d.y - r, cellSize), y1 = cell(d.y + r, cellSize);
+			for (long i = x0; i <= x1; i++) {
+				for (long j = y0; j <= y1; j++) {
+					cells.computeIfAbsent(key(i, j), k -> new ArrayList<>()).add(d.item);
+				}
+			}
+		}
+		Map<Long, Object[]> ret = new HashMap<>(cells.size() * 2);
+		for (Map.Entry<Long, List<T>> e : cells.entrySet()) {
+			ret.put(e.getKey(), e.getValue().toArray());
+		}
+		return new SpatialGrid<>(cellSize, ret);
+	}
+
+	/**
+	 * give to {@code action} the item of every disc which may contain the
+	 * point {@code (x, y)}, each once.
+	 */
+	@SuppressWarnings("unchecked")
+	void query(double x, double y, Consumer<? super T> action)
+	{
+		if (!Double.isFinite(x) || !Double.isFinite(y)) {
+			return;
+		}
+		Object[] items = this.cells.get(key(cell(x, this.cellSize), cell(y, this.cellSize)));
+		if (items != null) {
+			for (Object t : items) {
+				action.accept((T) t);
+			}
+		}
+	}
+
+	/**
+	 * radius widened so that rounding in the distance computation of the
+	 * filter cannot accept a point outside the covered cells.
+	 */
+	private static double margin(Disc<?> d)
+	{
+		return d.radius * (1.0 + 1e-9) + 1e-9 * (Math.abs(d.x) + Math.abs(d.y) + 1.0);
+	}
+
+	private static long cell(double v, double cellSize)
+	{
+		return (long) Math.floor(v / cellSize);
+	}
+
+	private static long key(long i, long j)
+	{
+		return (i << 32) ^ (j & 0xFFFFFFFFL);
+	}
+}
@@ -0,0 +1,482 @@
+package fr.sorbonne_u.cps.pubsub.messages.matching;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI;
+import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI.PropertyFilterI;
+import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI.ValueFilterI;
+import fr.sorbonne_u.cps.pubsub.interfaces.MessageI;
+import fr.sorbonne_u.cps.pubsub.interfaces.MessageI.PropertyI;
+import fr.sorbonne_u.cps.pubsub.messages.Message;
+import fr.sorbonne_u.cps.pubsub.messages.MessageFilter;
+import fr.sorbonne_u.cps.pubsub.messages.filters.ComparableValueFilter;
+import fr.sorbonne_u.cps.pubsub.messages.filters.DistanceWindFilter;
+import fr.sorbonne_u.cps.pubsub.messages.filters.EqualsValueFilter;
+import fr.sorbonne_u.cps.pubsub.messages.filters.PropertyFilter;
+import fr.sorbonne_u.cps.pubsub.messages.matching.IntervalTree.Interval;
+import fr.sorbonne_u.cps.pubsub.messages.matching.SpatialGrid.Disc;
+import fr.sorbonne_u.cps.pubsub.meteo.WindDataI;
+import fr.sorbonne_u.cps.pubsub.meteo.impl.Position2D;
+
+/**
+ * Immutable index of subscriptions used to preselect, for a message, the
+ * subscriptions that may accept it.
+ *
+ * <p>
+ * Each subscription is reached through a single access path chosen when the
+ * index is built:
+ * </p>
+ * <ul>
+ *   <li>spatial: a {@link MessageFilter} conjunct
+ *   {@code PropertyFilter(name, DistanceWindFilter)} around a
+ *   {@link Position2D} indexes the subscription in a uniform grid of
+ *   {@code name}, queried with the position of the wind data value of the
+ *   property; discs covering too many cells take another path;</li>
+ *   <li>equality: otherwise, a conjunct
+ *   {@code PropertyFilter(name, EqualsValueFilter(v))} indexes the
+ *   subscription under {@code (name, v)}; when a filter has several such
+ *   conjuncts, the least shared key is chosen;</li>
+ *   <li>range: otherwise, a conjunct
+ *   {@code PropertyFilter(name, ComparableValueFilter)} indexes the
+ *   subscription in an interval tree of {@code name}, one per class of
+ *   bounds, queried in O(log n + k) with the value of the property;</li>
+ *   <li>fallback: subscriptions without an indexable constraint are always
+ *   candidates.</li>
+ * </ul>
+ *
+ * <p>
+ * A candidate only satisfies the constraint it was indexed under: callers
+ * must still evaluate the full filter on each candidate. Each subscription
+ * is given at most once per message by {@link #forEachCandidate}.
+ * </p>
+ *
+ * @param <T>	type of the subscriptions.
+ *
+ * @author Bogdan Styn
+ */
+public class SubscriptionIndex<T>
+{
+	/** Empty array shared by empty buckets. */
+	protected static final Object[] NONE = new Object[0];
+
+	/** Equality buckets: property name -> expected value -> subscriptions. */
+	protected final Map<String, Map<Object, Object[]>> equality;
+	/** Spatial grids: property name -> grid. */
+	protected final Map<String, SpatialGrid<Object>> spatial;
+	/** Range trees: property name -> class of the bounds -> tree. */
+	protected final Map<String, Map<Class<?>, IntervalTree<Object>>> ranges;
+	/** Subscriptions which are candidates for every message. */
+	protected final Object[] fallback;
+	/** Number of indexed subscriptions. */
+	protected final int size;
+
+	/**
+	 * Build the index of {@code subscriptions}.
+	 *
+	 * @param subscriptions	subscriptions to index (none null).
+	 * @param filterOf		function returning the filter of a subscription.
+	 */
+	public SubscriptionIndex(T[] subscriptions, Function<? super T, MessageFilterI> filterOf)
+	{
+		if (subscriptions == null || filterOf == null) {
+			throw new IllegalArgumentException("subscriptions and filterOf cannot be null.");
+		}
+		this.size = subscriptions.length;
+
+		// First pass: spatial and equality keys of each subscription, the
+		// popularity of the equality keys and the radii of each grid.
+		final EqualityKey[][] keys = new EqualityKey[subscriptions.length][];
+		final Map<EqualityKey, Integer> counts = new HashMap<>();
+		final SpatialKey[] discs = new SpatialKey[subscriptions.length];
+		final Map<String, ArrayList<Double>> radii = new HashMap<>();
+		for (int i = 0; i < subscriptions.length; i++) {
+			MessageFilterI f = filterOf.apply(subscriptions[i]);
+			keys[i] = equalityKeys(f);
+			for (EqualityKey k : keys[i]) {
+				counts.merge(k, 1, Integer::sum);
+			}
+			discs[i] = spatialKey(f, subscriptions[i]);
+			if (discs[i] != null) {
+				radii.computeIfAbsent(discs[i].name, n -> new ArrayList<>()).add(discs[i].disc.radius);
+			}
+		}
+		final Map<String, Double> cellSizes = new HashMap<>();
+		for (Map.Entry<String, ArrayList<Double>> e : radii.entrySet()) {
+			cellSizes.put(e.getKey(),
+				SpatialGrid.cellSize(e.getValue().stream().mapToDouble(Double::doubleValue).toArray()));
+		}
+
+		// Second pass: each subscription goes to its grid, else to its least
+		// shared equality key, else to its range tree.
+		final Map<String, List<Disc<Object>>> sp = new HashMap<>();
+		final Map<String, Map<Object, ArrayList<T>>> eq = new HashMap<>();
+		final Map<String, Map<Class<?>, List<Interval<Object>>>> rg = new HashMap<>();
+		final ArrayList<T> others = new ArrayList<>();
+		for (int i = 0; i < subscriptions.length; i++) {
+			SpatialKey s = discs[i];
+			if (s != null && SpatialGrid.fits(s.disc, cellSizes.get(s.name))) {
+				sp.computeIfAbsent(s.name, n -> new ArrayList<>()).add(s.disc);
+				continue;
+			}
+			EqualityKey best = null;
+			int bestCount = Integer.MAX_VALUE;
+			for (EqualityKey k : keys[i]) {
+				int c = counts.get(k);
+				if (c < bestCount) {
+					best = k;
+					bestCount = c;
+				}
+			}
+			if (best != null) {
+				eq.computeIfAbsent(best.name, n -> new HashMap<>())
+				  .computeIfAbsent(best.value, v -> new ArrayList<>())
+				  .add(subscriptions[i]);
+				continue;
+			}
+			RangeKey r = rangeKey(filterOf.apply(subscriptions[i]));
+			if (r != null) {
+				rg.computeIfAbsent(r.name, n -> new HashMap<>())
+				  .computeIfAbsent(r.boundClass, c -> new ArrayList<>())
+				  .add(new Interval<Object>(r.low, r.high, subscriptions[i]));
+			} else {
+				others.add(subscriptions[i]);
+			}
+		}
+
+		this.equality = new HashMap<>(eq.size() * 2);
+		for (Map.Entry<String, Map<Object, ArrayList<T>>> e : eq.entrySet()) {
+			Map<Object, Object[]> byValue = new HashMap<>(e.getValue().size() * 2);
+			for (Map.Entry<Object, ArrayList<T>> b : e.getValue().entrySet()) {
+				byValue.put(b.getKey(), b.getValue().toArray());
+			}
+			this.equality.put(e.getKey(), byValue);
+		}
+		this.spatial = new HashMap<>(sp.size() * 2);
+		for (Map.Entry<String, List<Disc<Object>>> e : sp.entrySet()) {
+			this.spatial.put(e.getKey(), SpatialGrid.build(e.getValue(), cellSizes.get(e.getKey())));
+		}
+		this.ranges = new HashMap<>(rg.size() * 2);
+		for (Map.Entry<String, Map<Class<?>, List<Interval<Object>>>> e : rg.entrySet()) {
+			Map<Class<?>, IntervalTree<Object>> byClass = new HashMap<>();
+			for (Map.Entry<Class<?>, List<Interval<Object>>> c : e.getValue().entrySet()) {
+				byClass.put(c.getKey(), IntervalTree.build(c.getValue()));
+			}
+			this.ranges.put(e.getKey(), byClass);
+		}
+		this.fallback = others.isEmpty() ? NONE : others.toArray();
+	}
+
+	/**
+	 * @return	the number of indexed subscriptions.
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * give to {@code action} every subscription that may accept
+	 * {@code message}, each at most once.
+	 *
+	 * @param message	message to match (may be null).
+	 * @param action	action applied on each candidate.
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEachCandidate(MessageI message, Consumer<? super T> action)
+	{
+		for (Object t : this.fallback) {
+			action.accept((T) t);
+		}
+		if (message == null
+				|| (this.equality.isEmpty() && this.ranges.isEmpty() && this.spatial.isEmpty())) {
+			return;
+		}
+		if (message instanceof Message) {
+			// unique names, read in place without copying the properties.
+			Message m = (Message) message;
+			for (int i = 0, n = m.getPropertyCount(); i < n; i++) {
+				this.probe(m.getProperty(i), action);
+			}
+			return;
+		}
+		PropertyI[] props = message.getProperties();
+		if (props == null) {
+			return;
+		}
+		for (int i = 0; i < props.length; i++) {
+			if (props[i] != null && !shadowed(props, i)) {
+				this.probe(props[i], action);
+			}
+		}
+	}
+
+	/**
+	 * give to {@code action} the subscriptions indexed under a constraint
+	 * satisfied by the property {@code p}.
+	 */
+	@SuppressWarnings("unchecked")
+	protected void probe(PropertyI p, Consumer<? super T> action)
+	{
+		Map<Object, Object[]> byValue = this.equality.get(p.getName());
+		if (byValue != null) {
+			Object[] bucket = byValue.get(p.getValue());
+			if (bucket != null) {
+				for (Object t : bucket) {
+					action.accept((T) t);
+				}
+			}
+		}
+		Object v = p.getValue();
+		SpatialGrid<Object> grid = this.spatial.get(p.getName());
+		if (grid != null && v instanceof WindDataI
+				&& ((WindDataI) v).getPosition() instanceof Position2D) {
+			Position2D pos = (Position2D) ((WindDataI) v).getPosition();
+			grid.query(pos.getX(), pos.getY(), (Consumer<Object>) action);
+		}
+		Map<Class<?>, IntervalTree<Object>> byClass = this.ranges.get(p.getName());
+		if (byClass != null && v != null) {
+			// bounds of another class would make compareTo throw: no match.
+			IntervalTree<Object> tree = byClass.get(v.getClass());
+			if (tree != null) {
+				tree.stab((Comparable<Object>) v, (Consumer<Object>) action);
+			}
+		}
+	}
+
+	// -------------------------------------------------------------------------
+	// Access paths extraction
+	// -------------------------------------------------------------------------
+
+	/**
+	 * return true if a later property of {@code props} has the same name as
+	 * {@code props[i]}; filters see the last one, so only it is probed.
+	 */
+	protected static boolean shadowed(PropertyI[] props, int i)
+	{
+		String name = props[i].getName();
+		for (int j = i + 1; j < props.length; j++) {
+			if (props[j] != null && props[j].getName().equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * return true if {@code filter} is exactly a {@link MessageFilter}, whose
+	 * property filters are all required; subclasses may override
+	 * {@code match} and are never analysed.
+	 */
+	protected static boolean isAnalysable(MessageFilterI filter)
+	{
+		return filter != null && filter.getClass() == MessageFilter.class;
+	}
+
+	/**
+	 * return the value filter of {@code pf} if {@code pf} is exactly a
+	 * {@link PropertyFilter} on a named property and its value filter is
+	 * exactly of class {@code c}, or null otherwise; as for
+	 * {@link #isAnalysable}, subclasses may not enforce the constraint an
+	 * index key would assume.
+	 */
+	protected static ValueFilterI indexableValueFilter(
+		PropertyFilterI pf, Class<? extends ValueFilterI> c)
+	{
+		if (pf == null || pf.getClass() != PropertyFilter.class
+				|| pf.getName() == null) {
+			return null;
+		}
+		ValueFilterI vf = pf.getValueFilter();
+		return vf != null && vf.getClass() == c ? vf : null;
+	}
+
+	/**
+	 * return the equality constraints of {@code filter} usable as index keys;
+	 * only conjunctive {@link MessageFilter} instances are analysed.
+	 */
+	protected static EqualityKey[] equalityKeys(MessageFilterI filter)
+	{
+		if (!isAnalysable(filter)) {
+			return new EqualityKey[0];
+		}
+		ArrayList<EqualityKey> ret = new ArrayList<>();
+		for (PropertyFilterI pf : filter.getPropertyFilters()) {
+			ValueFilterI vf = indexableValueFilter(pf, EqualsValueFilter.class);
+			if (vf != null) {
+				Object v = ((EqualsValueFilter) vf).getExpected();
+				if (isHashable(v)) {
+					ret.add(new EqualityKey(pf.getName(), v));
+				}
+			}
+		}
+		return ret.toArray(new EqualityKey[ret.size()]);
+	}
+
+	/**
+	 * return the first distance constraint of {@code filter} usable as a
+	 * spatial index key, or null if none.
+	 */
+	protected static SpatialKey spatialKey(MessageFilterI filter, Object subscription)
+	{
+		if (!isAnalysable(filter)) {
+			return null;
+		}
+		for (PropertyFilterI pf : filter.getPropertyFilters()) {
+			ValueFilterI vf = indexableValueFilter(pf, DistanceWindFilter.class);
+			if (vf != null) {
+				DistanceWindFilter f = (DistanceWindFilter) vf;
+				// other positions are rejected by the filter (infinite distance).
+				if (f.getReferencePosition() instanceof Position2D) {
+					Position2D c = (Position2D) f.getReferencePosition();
+					return new SpatialKey(
+						pf.getName(),
+						new Disc<Object>(c.getX(), c.getY(), f.getMaxDistance(), subscription));
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * return the first range constraint of {@code filter} usable as an index
+	 * key, or null if none.
+	 */
+	protected static RangeKey rangeKey(MessageFilterI filter)
+	{
+		if (!isAnalysable(filter)) {
+			return null;
+		}
+		for (PropertyFilterI pf : filter.getPropertyFilters()) {
+			ValueFilterI vf = indexableValueFilter(pf, ComparableValueFilter.class);
+			if (vf == null) {
+				continue;
+			}
+			ComparableValueFilter f = (ComparableValueFilter) vf;
+			Comparable<?> b1 = f.getBound1();
+			if (!isOrdered(b1)) {
+				continue;
+			}
+			switch (f.getOperator()) {
+				case GE:
+					return new RangeKey(pf.getName(), b1, null);
+				case LE:
+					return new RangeKey(pf.getName(), null, b1);
+				case BETWEEN_INCLUSIVE:
+					Comparable<?> b2 = f.getBound2();
+					if (b2 != null && b2.getClass() == b1.getClass() && compare(b1, b2) <= 0) {
+						return new RangeKey(pf.getName(), b1, b2);
+					}
+					break;
+				default:
+					break;
+			}
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static int compare(Comparable<?> a, Comparable<?> b)
+	{
+		return ((Comparable<Object>) a).compareTo(b);
+	}
+
+	/**
+	 * return true if {@code b} is of a final class with a total natural
+	 * order, so that the values it compares to without exception are
+	 * exactly the values of its class.
+	 */
+	protected static boolean isOrdered(Object b)
+	{
+		return b instanceof String
+			|| b instanceof Integer || b instanceof Long
+			|| b instanceof Short || b instanceof Byte
+			|| b instanceof Double || b instanceof Float
+			|| b instanceof Boolean || b instanceof Character
+			|| b instanceof Instant;
+	}
+
+	/**
+	 * return true if {@code v} has a symmetric {@code equals} consistent with
+	 * {@code hashCode}, so that a hash lookup finds exactly the values
+	 * {@link EqualsValueFilter} accepts.
+	 */
+	protected static boolean isHashable(Object v)
+	{
+		return v == null
+			|| v instanceof String
+			|| v instanceof Integer || v instanceof Long
+			|| v instanceof Short || v instanceof Byte
+			|| v instanceof Double || v instanceof Float
+			|| v instanceof Boolean || v instanceof Character
+			|| v instanceof BigInteger || v instanceof BigDecimal
+			|| v instanceof Instant || v instanceof Enum;
+	}
+
+	/** Distance constraint of a subscription. */
+	protected static final class SpatialKey
+	{
+		final String name;
+		final Disc<Object> disc;
+
+		SpatialKey(String name, Disc<Object> disc)
+		{
+			this.name = name;
+			this.disc = disc;
+		}
+	}
+
+	/** Range constraint of a subscription; null bounds are infinite. */
+	protected static final class RangeKey
+	{
+		final String name;
+		final Class<?> boundClass;
+		final Comparable<?> low;
+		final Comparable<?> high;
+
+		RangeKey(String name, Comparable<?> low, Comparable<?> high)
+		{
+			this.name = name;
+			this.boundClass = (low != null ? low : high).getClass();
+			this.low = low;
+			this.high = high;
+		}
+	}
+
+	/** Key of an equality bucket. */
+	protected static final class EqualityKey
+	{
+		final String name;
+		final Object value;
+
+		EqualityKey(String name, Object value)
+		{
+			this.name = name;
+			this.value = value;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof EqualityKey)) {
+				return false;
+			}
+			EqualityKey k = (EqualityKey) o;
+			return this.name.equals(k.name)
+				&& (this.value == null ? k.value == null : this.value.equals(k.value));
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * this.name.hashCode() + (this.value == null ? 0 : this.value.hashCode());
+		}
+	}
+}
@@ -1,13 +1,40 @@
 package fr.sorbonne_u.cps.pubsub.plugins;
 
 import fr.sorbonne_u.components.AbstractPlugin;
+import fr.sorbonne_u.components.ComponentI;
+import fr.sorbonne_u.cps.pubsub.base.ports.ClientNotificationInboundPort;
 import fr.sorbonne_u.cps.pubsub.exceptions.UnauthorisedClientException;
 import fr.sorbonne_u.cps.pubsub.exceptions.UnknownChannelException;
 import fr.sorbonne_u.cps.pubsub.exceptions.UnknownClientException;
 import fr.sorbonne_u.cps.pubsub.interfaces.MessageI;
+import fr.sorbonne_u.cps.pubsub.interfaces.PublicationNotificationCI.PublicationReport;
+import fr.sorbonne_u.cps.pubsub.messages.Message;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /** Client-side plugin implementing publication operations (CDC §3.5). 
+ *
+ * The outcome of {@code asyncPublishAndNotify} publications is reported by
+ * the broker to a notification inbound port owned by the plugin, and handed
+ * to {@link #onPublicationReports(PublicationReport[])} by a dedicated
+ * executor of the owner.
+ *
+ * {@link #publishAsync(String, MessageI)} builds a pipelined publication on
+ * top of them: the publication is submitted one-way and its future completed
+ * by its report, at most {@code maxInFlight} publications awaiting their
+ * report at a time; a publication whose report does not come back within
+ * {@code reportTimeoutMillis} fails with a {@link TimeoutException} and
+ * frees its place in the window.
+ *
+ * When enabled by {@link #setBatching(int, long, long)}, the messages
+ * published one by one are buffered per channel and sent as one publication
+ * when a count, size or linger time limit is reached.
  *
  * @author Bogdan Styn
  */
@@ -15,12 +42,304 @@ public class ClientPublicationPlugin extends AbstractPlugin implements ClientPub
 {
 	private static final long serialVersionUID = 1L;
 
+	/** Default maximum number of {@code publishAsync} publications awaiting their report. */
+	public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+	/** Default time in milliseconds after which a {@code publishAsync} publication without report fails. */
+	public static final long DEFAULT_REPORT_TIMEOUT_MILLIS = 30000L;
+
 	protected final ClientRegistrationPlugin registrationPlugin;
+	/** Inbound port receiving the publication reports. */
+	protected ClientNotificationInboundPort notificationPortIN;
+	/** Executor handling the publication reports, apart from the owner's threads blocked by a full window. */
+	protected int esNotificationIndex;
+	/** Maximum number of {@code publishAsync} publications awaiting their report. */
+	protected final int maxInFlight;
+	/** Permits of the {@code publishAsync} publications awaiting their report. */
+	protected final Semaphore window;
+	/** Futures of the {@code publishAsync} publications, by id of their first message. */
+	protected final Map<Long, Awaited> pending = new ConcurrentHashMap<>();
+	/** Time in milliseconds after which a {@code publishAsync} publication without report fails. */
+	protected final long reportTimeoutMillis;
+	/** Schedulable executor failing the publications whose report is overdue. */
+	protected int esTimeoutIndex;
+	/** True while a check of the overdue publications is scheduled. */
+	protected final AtomicBoolean expiring = new AtomicBoolean();
+
+	/** Size assumed for the messages which are not {@link Message} instances. */
+	public static final int DEFAULT_MESSAGE_SIZE = 256;
+	/** Batching limits, null when batching is disabled. */
+	protected volatile Batching batching;
+	/** Schedulable executor flushing the lingering batches, created on first use. */
+	protected int esBatchIndex = -1;
+	/** Messages waiting to be sent, by channel. */
+	protected final Map<String, ChannelBatch> batches = new ConcurrentHashMap<>();
+
+	/** Future of a {@code publishAsync} publication and the time its report is due. */
+	protected static final class Awaited
+	{
+		final CompletableFuture<PublicationReport> future;
+		/** {@code System.nanoTime} after which the publication fails. */
+		final long deadline;
+
+		Awaited(CompletableFuture<PublicationReport> future, long deadline)
+		{
+			this.future = future;
+			this.deadline = deadline;
+		}
+	}
+
+	/** Limits of the batches of messages published one by one. */
+	protected static final class Batching
+	{
+		final int maxMessages;
+		final long maxBytes;
+		final long lingerMillis;
+
+		Batching(int maxMessages, long maxBytes, long lingerMillis)
+		{
+			this.maxMessages = maxMessages;
+			this.maxBytes = maxBytes;
+			this.lingerMillis = lingerMillis;
+		}
+	}
+
+	/** Messages of one channel waiting to be sent; guarded by its monitor. */
+	protected static final class ChannelBatch
+	{
+		final String channel;
+		ArrayList<MessageI> messages = new ArrayList<>();
+		/** Estimated serialised size of {@code messages}. */
+		long bytes;
+		/** Number of batches sent, which invalidates their linger timer. */
+		long generation;
+
+		ChannelBatch(String channel)
+		{
+			this.channel = channel;
+		}
+	}
 
 	public ClientPublicationPlugin(ClientRegistrationPlugin registrationPlugin)
+	{
+		this(registrationPlugin, DEFAULT_MAX_IN_FLIGHT);
+	}
+
+	/**
+	 * @param registrationPlugin	registration plugin of the owner.
+	 * @param maxInFlight			maximum number of {@code publishAsync} publications awaiting their report (>= 1).
+	 */
+	public ClientPublicationPlugin(ClientRegistrationPlugin registrationPlugin, int maxInFlight)
+	{
+		this(registrationPlugin, maxInFlight, DEFAULT_REPORT_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * @param registrationPlugin	registration plugin of the owner.
+	 * @param maxInFlight			maximum number of {@code publishAsync} publications awaiting their report (>= 1).
+	 * @param reportTimeoutMillis	time in milliseconds after which a {@code publishAsync} publication without report fails (>= 1).
+	 */
+	public ClientPublicationPlugin(
+		ClientRegistrationPlugin registrationPlugin,
+		int maxInFlight,
+		long reportTimeoutMillis
+		)
 	{
 		super();
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("maxInFlight must be >= 1.");
+		}
+		if (reportTimeoutMillis < 1) {
+			throw new IllegalArgumentException("reportTimeoutMillis must be >= 1.");
+		}
 		this.registrationPlugin = registrationPlugin;
+		this.maxInFlight = maxInFlight;
+		this.window = new Semaphore(maxInFlight);
+		this.reportTimeoutMillis = reportTimeoutMillis;
+	}
+
+	@Override
+	public void installOn(ComponentI owner) throws Exception
+	{
+		super.installOn(owner);
+		this.esNotificationIndex = this.createNewExecutorService(this.getPluginURI() + "-notification-es", 1, false);
+		this.esTimeoutIndex = this.createNewExecutorService(this.getPluginURI() + "-timeout-es", 1, true);
+		this.notificationPortIN = new ClientNotificationInboundPort(owner, this);
+		this.notificationPortIN.publishPort();
+	}
+
+	@Override
+	public void finalise() throws Exception
+	{
+		try {
+			this.flush();
+		} catch (RuntimeException e) {
+			this.logMessage("[ClientPublicationPlugin] final flush failed: " + e + "\n");
+		}
+		super.finalise();
+	}
+
+	@Override
+	public void uninstall() throws Exception
+	{
+		for (Long id : this.pending.keySet()) {
+			Awaited a = this.pending.remove(id);
+			if (a != null) {
+				this.window.release();
+				a.future.completeExceptionally(new IllegalStateException("publication plugin uninstalled."));
+			}
+		}
+		try {
+			if (this.notificationPortIN != null && !this.notificationPortIN.isDestroyed()) {
+				this.notificationPortIN.unpublishPort();
+				this.notificationPortIN.destroyPort();
+			}
+		} catch (Exception ignored) {
+		}
+		super.uninstall();
+	}
+
+	public String getNotificationPortURI() throws Exception
+	{
+		return this.notificationPortIN.getPortURI();
+	}
+
+	public int getNotificationExecutorIndex()
+	{
+		return this.esNotificationIndex;
+	}
+
+	public int getMaxInFlight()
+	{
+		return this.maxInFlight;
+	}
+
+	public long getReportTimeoutMillis()
+	{
+		return this.reportTimeoutMillis;
+	}
+
+	/**
+	 * batch the messages published one by one: the messages of a channel
+	 * are buffered and sent as one publication when {@code maxMessages} are
+	 * waiting, when their estimated serialised size reaches {@code maxBytes}
+	 * or when the oldest has waited {@code lingerMillis} milliseconds; other
+	 * publications on the channel first send its batch, so that the order of
+	 * the messages is kept. The errors of batched publications, reported by
+	 * the broker, are handled by {@link #onPublicationReports}.
+	 *
+	 * @param maxMessages	maximum number of messages per batch (1 disables batching).
+	 * @param maxBytes		maximum estimated size of a batch in bytes (>= 1).
+	 * @param lingerMillis	maximum time in milliseconds a message waits for its batch (>= 0).
+	 */
+	public void setBatching(int maxMessages, long maxBytes, long lingerMillis)
+	{
+		if (maxMessages < 1) {
+			throw new IllegalArgumentException("maxMessages must be >= 1.");
+		}
+		if (maxBytes < 1) {
+			throw new IllegalArgumentException("maxBytes must be >= 1.");
+		}
+		if (lingerMillis < 0) {
+			throw new IllegalArgumentException("lingerMillis must be >= 0.");
+		}
+		if (maxMessages == 1) {
+			this.batching = null;
+		} else {
+			synchronized (this.batches) {
+				if (lingerMillis > 0 && this.esBatchIndex < 0) {
+					this.esBatchIndex = this.createNewExecutorService(
+						this.getPluginURI() + "-batch-es", 1, true);
+				}
+			}
+			this.batching = new Batching(maxMessages, maxBytes, lingerMillis);
+		}
+		// the waiting messages follow the former limits.
+		this.flush();
+	}
+
+	public boolean isBatching()
+	{
+		return this.batching != null;
+	}
+
+	/** send the waiting messages of all the channels. */
+	public void flush()
+	{
+		for (ChannelBatch cb : this.batches.values()) {
+			synchronized (cb) {
+				this.send(cb);
+			}
+		}
+	}
+
+	/** send the waiting messages of {@code channel}. */
+	protected void flush(String channel)
+	{
+		ChannelBatch cb = this.batches.get(channel);
+		if (cb != null) {
+			synchronized (cb) {
+				this.send(cb);
+			}
+		}
+	}
+
+	/** add {@code message} to the batch of {@code channel}, sending it when full. */
+	protected void buffer(Batching b, String channel, MessageI message)
+	{
+		ChannelBatch cb = this.batches.computeIfAbsent(channel, ChannelBatch::new);
+		synchronized (cb) {
+			cb.messages.add(message);
+			cb.bytes += message instanceof Message ? ((Message) message).estimatedSize() : DEFAULT_MESSAGE_SIZE;
+			if (cb.messages.size() >= b.maxMessages || cb.bytes >= b.maxBytes || b.lingerMillis == 0) {
+				this.send(cb);
+			} else if (cb.messages.size() == 1) {
+				final long generation = cb.generation;
+				this.getOwner().scheduleTask(
+					this.esBatchIndex,
+					o -> this.lingerExpired(cb, generation),
+					b.lingerMillis,
+					TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	/** send the batch {@code generation} of {@code cb} unless already sent. */
+	protected void lingerExpired(ChannelBatch cb, long generation)
+	{
+		synchronized (cb) {
+			if (cb.generation == generation) {
+				try {
+					this.send(cb);
+				} catch (RuntimeException e) {
+					this.logMessage("[ClientPublicationPlugin] batch on " + cb.channel + " lost: " + e + "\n");
+				}
+			}
+		}
+	}
+
+	/** send the waiting messages of {@code cb} as one publication; must be called holding {@code cb}. */
+	protected void send(ChannelBatch cb)
+	{
+		if (cb.messages.isEmpty()) {
+			return;
+		}
+		ArrayList<MessageI> ms = cb.messages;
+		cb.messages = new ArrayList<>();
+		cb.bytes = 0;
+		cb.generation++;
+		try {
+			if (ms.size() == 1) {
+				this.registrationPlugin.getPublishingPortOUT().asyncPublishAndNotify(
+					this.registrationPlugin.getReceptionPortURI(), cb.channel, ms.get(0),
+					this.getNotificationPortURI());
+			} else {
+				this.registrationPlugin.getPublishingPortOUT().asyncPublishAndNotify(
+					this.registrationPlugin.getReceptionPortURI(), cb.channel, ms,
+					this.getNotificationPortURI());
+			}
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
 	}
 
 	@Override
@@ -51,6 +370,11 @@ public class ClientPublicationPlugin extends AbstractPlugin implements ClientPub
 	public void publish(String channel, MessageI message)
 	throws UnknownClientException, UnknownChannelException, UnauthorisedClientException
 	{
+		Batching b = this.batching;
+		if (b != null) {
+			this.buffer(b, channel, message);
+			return;
+		}
 		try {
 			this.registrationPlugin.getPublishingPortOUT().publish(
 				this.registrationPlugin.getReceptionPortURI(),
@@ -67,6 +391,7 @@ public class ClientPublicationPlugin extends AbstractPlugin implements ClientPub
 	public void publish(String channel, ArrayList<MessageI> messages)
 	throws UnknownClientException, UnknownChannelException, UnauthorisedClientException
 	{
+		this.flush(channel);
 		try {
 			this.registrationPlugin.getPublishingPortOUT().publish(
 				this.registrationPlugin.getReceptionPortURI(),
@@ -80,24 +405,183 @@ public class ClientPublicationPlugin extends AbstractPlugin implements ClientPub
 	}
 
 	@Override
-	public void asyncPublishAndNotify(String channel, MessageI message) {
-		this.getOwner().runTask( o -> {
-            try {
-                ((ClientPublicationPlugin)o).publish(channel,message);
-            } catch (Exception e) {
-				throw new RuntimeException(e);
-			}
-        });
+	public void asyncPublishAndNotify(String channel, MessageI message)
+	{
+		this.flush(channel);
+		try {
+			this.registrationPlugin.getPublishingPortOUT().asyncPublishAndNotify(
+				this.registrationPlugin.getReceptionPortURI(),
+				channel,
+				message,
+				this.getNotificationPortURI());
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
 	}
 
 	@Override
-	public void asyncPublishAndNotify(String channel, ArrayList<MessageI> messages) {
-		this.getOwner().runTask( o -> {
-			try {
-				((ClientPublicationPlugin)o).publish(channel,messages);
-			} catch (Exception e) {
-				throw new RuntimeException(e);
+	public void asyncPublishAndNotify(String channel, ArrayList<MessageI> messages)
+	{
+		this.flush(channel);
+		try {
+			this.registrationPlugin.getPublishingPortOUT().asyncPublishAndNotify(
+				this.registrationPlugin.getReceptionPortURI(),
+				channel,
+				messages,
+				this.getNotificationPortURI());
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * publish {@code message} on {@code channel} without waiting for the
+	 * broker, blocking only while {@code maxInFlight} publications await
+	 * their report.
+	 *
+	 * <p>
+	 * The future is completed with the report of the publication, or
+	 * exceptionally with the cause of its refusal by the broker, or with a
+	 * {@link TimeoutException} when no report came back in time; it is
+	 * completed by the thread handling the reports, so lengthy actions
+	 * depending on it should run asynchronously.
+	 * </p>
+	 *
+	 * @param channel				name of an existing channel.
+	 * @param message				message to publish, a {@link Message} not already awaiting its report.
+	 * @return						the future report of the publication.
+	 * @throws InterruptedException	when interrupted while the window is full.
+	 */
+	public CompletableFuture<PublicationReport> publishAsync(String channel, MessageI message)
+	throws InterruptedException
+	{
+		CompletableFuture<PublicationReport> f = this.track(message);
+		try {
+			this.asyncPublishAndNotify(channel, message);
+		} catch (RuntimeException e) {
+			this.untrack(message, f, e.getCause() != null ? e.getCause() : e);
+		}
+		return f;
+	}
+
+	/**
+	 * publish {@code messages} on {@code channel} as one publication without
+	 * waiting for the broker; see {@link #publishAsync(String, MessageI)}.
+	 *
+	 * @param channel				name of an existing channel.
+	 * @param messages				non empty list of {@link Message} instances.
+	 * @return						the future report of the publication.
+	 * @throws InterruptedException	when interrupted while the window is full.
+	 */
+	public CompletableFuture<PublicationReport> publishAsync(String channel, ArrayList<MessageI> messages)
+	throws InterruptedException
+	{
+		if (messages == null || messages.isEmpty()) {
+			throw new IllegalArgumentException("messages cannot be null or empty.");
+		}
+		for (MessageI m : messages) {
+			if (!(m instanceof Message)) {
+				throw new IllegalArgumentException("publishAsync needs Message instances.");
 			}
-		});
+		}
+		// the report carries the ids of all the messages: the first identifies it.
+		CompletableFuture<PublicationReport> f = this.track(messages.get(0));
+		try {
+			this.asyncPublishAndNotify(channel, messages);
+		} catch (RuntimeException e) {
+			this.untrack(messages.get(0), f, e.getCause() != null ? e.getCause() : e);
+		}
+		return f;
+	}
+
+	/** take a permit of the window and register the future of the publication identified by {@code first}. */
+	protected CompletableFuture<PublicationReport> track(MessageI first) throws InterruptedException
+	{
+		if (!(first instanceof Message)) {
+			throw new IllegalArgumentException("publishAsync needs Message instances.");
+		}
+		CompletableFuture<PublicationReport> f = new CompletableFuture<>();
+		this.window.acquire();
+		Awaited a = new Awaited(f, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.reportTimeoutMillis));
+		// registered before the submission: the report may come back first.
+		if (this.pending.putIfAbsent(((Message) first).getId(), a) != null) {
+			this.window.release();
+			throw new IllegalStateException("message " + ((Message) first).getId() + " already awaiting its report.");
+		}
+		this.expireLater();
+		return f;
+	}
+
+	/** withdraw the future {@code f} of a publication which could not be submitted. */
+	protected void untrack(MessageI first, CompletableFuture<PublicationReport> f, Throwable cause)
+	{
+		Long id = ((Message) first).getId();
+		Awaited a = this.pending.get(id);
+		if (a != null && a.future == f && this.pending.remove(id, a)) {
+			this.window.release();
+			f.completeExceptionally(cause);
+		}
+	}
+
+	/** schedule a check of the overdue publications unless one is pending. */
+	protected void expireLater()
+	{
+		if (this.expiring.compareAndSet(false, true)) {
+			// checked four times per timeout: a report is awaited at most 25% longer.
+			this.getOwner().scheduleTask(
+				this.esTimeoutIndex,
+				o -> this.expireOverdue(),
+				Math.max(1L, this.reportTimeoutMillis / 4),
+				TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * fail the {@code publishAsync} publications whose report is overdue,
+	 * releasing their permits: a report lost by the broker or on the way
+	 * must not hold the window forever. Checks again later while
+	 * publications await their report.
+	 */
+	protected void expireOverdue()
+	{
+		final long now = System.nanoTime();
+		for (Map.Entry<Long, Awaited> e : this.pending.entrySet()) {
+			Awaited a = e.getValue();
+			if (a.deadline - now <= 0 && this.pending.remove(e.getKey(), a)) {
+				this.window.release();
+				a.future.completeExceptionally(new TimeoutException(
+					"no report for message " + e.getKey() + " after " + this.reportTimeoutMillis + " ms."));
+			}
+		}
+		this.expiring.set(false);
+		if (!this.pending.isEmpty()) {
+			this.expireLater();
+		}
+	}
+
+	/**
+	 * handle the outcome of {@code asyncPublishAndNotify} publications;
+	 * called by a task of the notification executor of the owner. The futures
+	 * of {@code publishAsync} publications are completed; by default, the
+	 * other publications which did not terminate normally are logged.
+	 *
+	 * @param reports	reports of ended publications.
+	 */
+	public void onPublicationReports(PublicationReport[] reports)
+	{
+		for (PublicationReport r : reports) {
+			long[] ids = r.getMessageIds();
+			Awaited a = ids.length > 0 ? this.pending.remove(ids[0]) : null;
+			if (a != null) {
+				this.window.release();
+				if (r.getRejected() > 0) {
+					a.future.completeExceptionally(r.getError());
+				} else {
+					a.future.complete(r);
+				}
+			} else if (!r.isNormalTermination()) {
+				this.logMessage("[ClientPublicationPlugin] " + r + "\n");
+			}
+		}
 	}
 }
@@ -9,17 +9,27 @@ import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI;
 import fr.sorbonne_u.cps.pubsub.interfaces.MessageI;
 
 import java.time.Duration;
-import java.util.ArrayDeque;
-import java.util.Deque;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Client-side plugin implementing subscription operations (CDC §3.5).
- * 
+ *
+ * The messages kept for the advanced reception operations wait in one inbox
+ * per channel: a lock-free queue whose messages are counted by a semaphore,
+ * so that a message wakes a single waiter of its own channel, and channels
+ * never contend with each other. Every message is queued before being
+ * paired with a waiting future, so that the futures of a channel get its
+ * messages in the order of reception.
+ *
+ * Every received message is also handed to the delivery handler, whether
+ * or not an advanced reception call consumes it.
  *
  * @author Bogdan Styn
  */
@@ -35,10 +45,22 @@ public class ClientSubscriptionPlugin extends AbstractPlugin implements ClientSu
 	// Advanced reception (CDC §3.5.3) state
 	// ---------------------------------------------------------------------
 
-	/** Per-channel FIFO of received messages not yet consumed by advanced calls. */
-	protected final Map<String, Deque<MessageI>> pendingMessages = new HashMap<>();
-	/** Per-channel next-message future to complete when a message arrives. */
-	protected final Map<String, CompletableFuture<MessageI>> nextMessageFutures = new HashMap<>();
+	/** Per-channel inbox of received messages not yet consumed by advanced calls. */
+	protected final Map<String, ChannelInbox> inboxes = new ConcurrentHashMap<>();
+
+	/**
+	 * Messages of one channel not yet consumed, and futures waiting for the
+	 * next ones.
+	 */
+	protected static final class ChannelInbox
+	{
+		/** Received messages, in order of reception; a message taken for a cancelled future goes back first. */
+		final ConcurrentLinkedDeque<MessageI> messages = new ConcurrentLinkedDeque<>();
+		/** One permit per message of {@code messages}, taken before polling it. */
+		final Semaphore available = new Semaphore(0);
+		/** Futures returned by {@code getNextMessage}, in order of the calls. */
+		final ConcurrentLinkedQueue<CompletableFuture<MessageI>> futures = new ConcurrentLinkedQueue<>();
+	}
 
 	/** Owner-side callback for received messages. */
 	@FunctionalInterface
@@ -147,24 +169,51 @@ public class ClientSubscriptionPlugin extends AbstractPlugin implements ClientSu
 		}
 	}
 
+	protected ChannelInbox inbox(String channel)
+	{
+		return this.inboxes.computeIfAbsent(channel, c -> new ChannelInbox());
+	}
+
 	@Override
 	public void receive(String channel, MessageI message)
 	{
-		// First, satisfy advanced reception consumers (if any).
-		synchronized (this) {
-			CompletableFuture<MessageI> f = this.nextMessageFutures.get(channel);
-			if (f != null && !f.isDone()) {
-				f.complete(message);
-				return;
-			}
-			this.pendingMessages.computeIfAbsent(channel, c -> new ArrayDeque<>()).addLast(message);
-			this.notifyAll();
-		}
+		ChannelInbox inbox = this.inbox(channel);
+		// queued first, even when futures wait: older messages go to them first.
+		inbox.messages.offer(message);
+		inbox.available.release();
+		this.match(inbox);
 		if (this.handler != null) {
 			this.handler.onReceive(channel, message);
 		}
 	}
 
+	/**
+	 * complete the futures of {@code inbox} with its messages, as long as
+	 * both are waiting; run by both sides after queueing their part, so that
+	 * at least one of them sees the other's.
+	 */
+	protected void match(ChannelInbox inbox)
+	{
+		while (!inbox.futures.isEmpty() && inbox.available.tryAcquire()) {
+			CompletableFuture<MessageI> f = inbox.futures.poll();
+			if (f == null) {
+				// taken by a concurrent match.
+				inbox.available.release();
+				return;
+			}
+			MessageI m = inbox.messages.poll();
+			// a future cancelled by its caller passes the message to the next one.
+			while (f != null && !f.complete(m)) {
+				f = inbox.futures.poll();
+			}
+			if (f == null) {
+				// all cancelled: the message stays available, still first.
+				inbox.messages.offerFirst(m);
+				inbox.available.release();
+			}
+		}
+	}
+
 	@Override
 	public void receive(String channel, MessageI[] messages)
 	{
@@ -189,19 +238,14 @@ public class ClientSubscriptionPlugin extends AbstractPlugin implements ClientSu
 		if (channel == null || channel.isEmpty()) {
 			throw new IllegalArgumentException("channel cannot be null/empty");
 		}
-		synchronized (this) {
-			Deque<MessageI> q = this.pendingMessages.get(channel);
-			while (q == null || q.isEmpty()) {
-				try {
-					this.wait();
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
-					return null;
-				}
-				q = this.pendingMessages.get(channel);
-			}
-			return q.removeFirst();
+		ChannelInbox inbox = this.inbox(channel);
+		try {
+			inbox.available.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
 		}
+		return inbox.messages.poll();
 	}
 
 	@Override
@@ -213,27 +257,16 @@ public class ClientSubscriptionPlugin extends AbstractPlugin implements ClientSu
 		if (d == null) {
 			throw new IllegalArgumentException("duration cannot be null");
 		}
-		long remainingNanos = d.toNanos();
-		long deadline = System.nanoTime() + remainingNanos;
-		synchronized (this) {
-			Deque<MessageI> q = this.pendingMessages.get(channel);
-			while (q == null || q.isEmpty()) {
-				if (remainingNanos <= 0) {
-					return null;
-				}
-				try {
-					long ms = TimeUnit.NANOSECONDS.toMillis(remainingNanos);
-					int ns = (int) (remainingNanos - TimeUnit.MILLISECONDS.toNanos(ms));
-					this.wait(ms, ns);
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
-					return null;
-				}
-				remainingNanos = deadline - System.nanoTime();
-				q = this.pendingMessages.get(channel);
+		ChannelInbox inbox = this.inbox(channel);
+		try {
+			if (!inbox.available.tryAcquire(d.toNanos(), TimeUnit.NANOSECONDS)) {
+				return null;
 			}
-			return q.removeFirst();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
 		}
+		return inbox.messages.poll();
 	}
 
 	@Override
@@ -242,17 +275,14 @@ public class ClientSubscriptionPlugin extends AbstractPlugin implements ClientSu
 		if (channel == null || channel.isEmpty()) {
 			throw new IllegalArgumentException("channel cannot be null/empty");
 		}
-		synchronized (this) {
-			Deque<MessageI> q = this.pendingMessages.get(channel);
-			if (q != null && !q.isEmpty()) {
-				return CompletableFuture.completedFuture(q.removeFirst());
-			}
-			CompletableFuture<MessageI> f = this.nextMessageFutures.get(channel);
-			if (f == null || f.isDone()) {
-				f = new CompletableFuture<>();
-				this.nextMessageFutures.put(channel, f);
-			}
-			return f;
+		ChannelInbox inbox = this.inbox(channel);
+		if (inbox.available.tryAcquire()) {
+			return CompletableFuture.completedFuture(inbox.messages.poll());
 		}
+		CompletableFuture<MessageI> f = new CompletableFuture<>();
+		inbox.futures.offer(f);
+		// a message queued meanwhile may have missed the future.
+		this.match(inbox);
+		return f;
 	}
 }
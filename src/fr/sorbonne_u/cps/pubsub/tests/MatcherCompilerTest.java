@@ -0,0 +1,135 @@
+package fr.sorbonne_u.cps.pubsub.tests;
+
+import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI;
+import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI.PropertiesFilterI;
+import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI.PropertyFilterI;
+import fr.sorbonne_u.cps.pubsub.messages.Message;
+import fr.sorbonne_u.cps.pubsub.messages.MessageFilter;
+import fr.sorbonne_u.cps.pubsub.messages.filters.AcceptAllValueFilter;
+import fr.sorbonne_u.cps.pubsub.messages.filters.AfterOrAtTimeFilter;
+import fr.sorbonne_u.cps.pubsub.messages.filters.ComparableValueFilter;
+import fr.sorbonne_u.cps.pubsub.messages.filters.EqualsValueFilter;
+import fr.sorbonne_u.cps.pubsub.messages.filters.MultiValuesFilter;
+import fr.sorbonne_u.cps.pubsub.messages.filters.PropertiesFilter;
+import fr.sorbonne_u.cps.pubsub.messages.filters.PropertyFilter;
+import fr.sorbonne_u.cps.pubsub.messages.matching.CompiledMatcher;
+import fr.sorbonne_u.cps.pubsub.messages.matching.MatcherCompiler;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the compilation of filters into generated matchers.
+ *
+ * What is being tested:
+ * - a compiled matcher returns what the interpreted filters return, for
+ *   folded constants (strings, integers, longs, doubles, booleans),
+ *   ranges, custom value filters, properties filters and time filters
+ * - sets of filters larger than one dispatch switch
+ *
+ * @author Bogdan Styn
+ */
+public class MatcherCompilerTest {
+
+	private static void info(String s) {
+		System.out.println("[MatcherCompilerTest] " + s);
+	}
+
+	private static MessageFilter filter(PropertyFilterI... pfs) {
+		return new MessageFilter(pfs, new PropertiesFilterI[0], null);
+	}
+
+	private static MessageFilterI[] filters() {
+		List<MessageFilterI> ret = new ArrayList<>();
+		ret.add(filter(new PropertyFilter("type", new EqualsValueFilter("wind"))));
+		ret.add(filter(new PropertyFilter("type", new EqualsValueFilter("quote\"d"))));
+		ret.add(filter(new PropertyFilter("n", new EqualsValueFilter(3))));
+		ret.add(filter(new PropertyFilter("n", new EqualsValueFilter(3L))));
+		ret.add(filter(new PropertyFilter("d", new EqualsValueFilter(-0.0))));
+		ret.add(filter(new PropertyFilter("d", new EqualsValueFilter(2.5))));
+		ret.add(filter(new PropertyFilter("b", new EqualsValueFilter(true))));
+		ret.add(filter(new PropertyFilter("n", new EqualsValueFilter(null))));
+		ret.add(filter(new PropertyFilter("n", ComparableValueFilter.greaterOrEqual(2))));
+		ret.add(filter(new PropertyFilter("n", ComparableValueFilter.lowerOrEqual(4L))));
+		ret.add(filter(new PropertyFilter("d", ComparableValueFilter.betweenInclusive(-1.0, 2.5))));
+		ret.add(filter(new PropertyFilter("type", ComparableValueFilter.betweenInclusive("a", "w"))));
+		ret.add(filter(new PropertyFilter("type", new AcceptAllValueFilter()),
+					   new PropertyFilter("n", value -> value instanceof Integer && (Integer) value % 2 == 0)));
+		ret.add(new MessageFilter(
+			new PropertyFilterI[0],
+			new PropertiesFilterI[] { new PropertiesFilter(new MultiValuesFilter("n", "d") {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected boolean matchValues(Serializable... values) {
+					return values[0] instanceof Integer && values[1] instanceof Double
+						&& (Integer) values[0] < (Double) values[1];
+				}
+			}) },
+			null));
+		ret.add(new MessageFilter(
+			new PropertyFilterI[] { new PropertyFilter("b", new EqualsValueFilter(false)) },
+			new PropertiesFilterI[0],
+			new AfterOrAtTimeFilter(Instant.now().plusSeconds(3600))));
+		ret.add(MessageFilter.acceptAll());
+		ret.add(null);
+		return ret.toArray(new MessageFilterI[ret.size()]);
+	}
+
+	private static Message randomMessage(Random r) {
+		Message m = new Message("payload");
+		Serializable[] types = { "wind", "alert", "quote\"d", 3 };
+		Serializable[] ns = { 1, 2, 3, 4, 5, 3L, 4L, 5L, 3.0, null };
+		Serializable[] ds = { -0.0, 0.0, 2.5, -1.0, 3.0, Double.NaN, 2 };
+		if (r.nextInt(4) > 0) m.putProperty("type", types[r.nextInt(types.length)]);
+		if (r.nextInt(4) > 0) m.putProperty("n", ns[r.nextInt(ns.length)]);
+		if (r.nextInt(4) > 0) m.putProperty("d", ds[r.nextInt(ds.length)]);
+		if (r.nextInt(4) > 0) m.putProperty("b", r.nextBoolean());
+		return m;
+	}
+
+	private static boolean interpreted(MessageFilterI f, Message m) {
+		try {
+			return f != null && f.match(m);
+		} catch (ClassCastException e) {
+			// as in the broker, a filter exception is a mismatch.
+			return false;
+		}
+	}
+
+	@Test
+	public void testCompiledMatchesInterpreted() throws Exception {
+		info("Compiled matchers agree with the interpreted filters.");
+
+		MessageFilterI[] fs = filters();
+		CompiledMatcher cm = MatcherCompiler.compile(fs);
+		Random r = new Random(3);
+		for (int k = 0; k < 2000; k++) {
+			Message m = randomMessage(r);
+			for (int i = 0; i < fs.length; i++) {
+				assertEquals("filter " + i, interpreted(fs[i], m), cm.match(i, m));
+			}
+		}
+	}
+
+	@Test
+	public void testManyFilters() throws Exception {
+		info("Sets of filters spanning several dispatch switches are compiled.");
+
+		MessageFilterI[] fs = new MessageFilterI[1000];
+		for (int i = 0; i < fs.length; i++) {
+			fs[i] = filter(new PropertyFilter("station", new EqualsValueFilter("s" + i)));
+		}
+		CompiledMatcher cm = MatcherCompiler.compile(fs);
+		Message m = new Message("payload");
+		m.putProperty("station", "s700");
+		for (int i = 0; i < fs.length; i++) {
+			assertEquals(i == 700, cm.match(i, m));
+		}
+	}
+}
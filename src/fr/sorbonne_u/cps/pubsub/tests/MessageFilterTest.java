@@ -32,6 +32,8 @@ import static org.junit.Assert.*;
  * - PropertiesFilter: applies a MultiValuesFilterI on a set of properties (cross-constraints)
  * - Time filters: accept-all and time interval inclusion
  * - MessageFilter: global match on a full message (properties + time)
+ * - MessageFilter: subclasses of PropertiesFilter keep their own match
+ * - Structural equality: filters built from equal parts are equal
  
  *
  * @author Bogdan Styn
@@ -170,4 +172,72 @@ public class MessageFilterTest {
 		m2.putProperty("type", "other");
 		assertFalse(filter.match(m2));
 	}
+
+	@Test
+	public void testPropertiesFilterSubclassOverride() throws Exception {
+		info("MessageFilter calls the match(PropertyI...) override of a PropertiesFilter subclass.");
+
+		MessageFilterI.MultiValuesFilterI mv = new fr.sorbonne_u.cps.pubsub.messages.filters.MultiValuesFilter("type", "stationId") {
+			@Override
+			protected boolean matchValues(Serializable... values) {
+				return true;
+			}
+		};
+		MessageFilterI.PropertiesFilterI refuseAll = new PropertiesFilter(mv) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			public boolean match(MessageI.PropertyI... properties) {
+				return false;
+			}
+		};
+
+		Message m = new Message("hello");
+		m.putProperty("type", "wind");
+		m.putProperty("stationId", "WS1");
+
+		MessageFilterI filter = new MessageFilter(
+			new MessageFilterI.PropertyFilterI[0],
+			new MessageFilterI.PropertiesFilterI[] { new PropertiesFilter(mv) },
+			new AcceptAllTimeFilter());
+		assertTrue(filter.match(m));
+
+		MessageFilterI overridden = new MessageFilter(
+			new MessageFilterI.PropertyFilterI[0],
+			new MessageFilterI.PropertiesFilterI[] { refuseAll },
+			new AcceptAllTimeFilter());
+		assertFalse(overridden.match(m));
+	}
+
+	@Test
+	public void testStructuralEquality() {
+		info("Filters built from equal parts are equal and have equal hash codes.");
+
+		Instant t0 = Instant.parse("2026-01-01T00:00:00Z");
+		MessageFilter a = new MessageFilter(
+			new MessageFilterI.PropertyFilterI[] {
+				new PropertyFilter("type", new EqualsValueFilter("alert")),
+				new PropertyFilter("level", ComparableValueFilter.betweenInclusive(2, 4))
+			},
+			new MessageFilterI.PropertiesFilterI[0],
+			new AfterOrAtTimeFilter(t0));
+		MessageFilter b = new MessageFilter(
+			new MessageFilterI.PropertyFilterI[] {
+				new PropertyFilter("type", new EqualsValueFilter("alert")),
+				new PropertyFilter("level", ComparableValueFilter.betweenInclusive(2, 4))
+			},
+			new MessageFilterI.PropertiesFilterI[0],
+			new AfterOrAtTimeFilter(t0));
+		assertEquals(a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+		assertEquals(MessageFilter.acceptAll(), MessageFilter.acceptAll());
+
+		MessageFilter c = new MessageFilter(
+			new MessageFilterI.PropertyFilterI[] {
+				new PropertyFilter("type", new EqualsValueFilter("alert")),
+				new PropertyFilter("level", ComparableValueFilter.betweenInclusive(2L, 4L))
+			},
+			new MessageFilterI.PropertiesFilterI[0],
+			new AfterOrAtTimeFilter(t0));
+		assertNotEquals(a, c);
+	}
 }
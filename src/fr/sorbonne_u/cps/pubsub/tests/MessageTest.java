@@ -3,9 +3,20 @@ package fr.sorbonne_u.cps.pubsub.tests;
 import fr.sorbonne_u.cps.pubsub.exceptions.UnknownPropertyException;
 import fr.sorbonne_u.cps.pubsub.interfaces.MessageI;
 import fr.sorbonne_u.cps.pubsub.messages.Message;
+import fr.sorbonne_u.cps.pubsub.meteo.MeteoAlertI;
+import fr.sorbonne_u.cps.pubsub.meteo.RegionI;
+import fr.sorbonne_u.cps.pubsub.meteo.impl.CircularRegion;
+import fr.sorbonne_u.cps.pubsub.meteo.impl.MeteoAlert;
+import fr.sorbonne_u.cps.pubsub.meteo.impl.Position2D;
+import fr.sorbonne_u.cps.pubsub.meteo.impl.WindData;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.time.Duration;
 import java.time.Instant;
 
 import static org.junit.Assert.*;
@@ -18,6 +29,11 @@ import static org.junit.Assert.*;
  * - properties obey the CDC contract: unique names, existence check, value retrieval
  * - removing properties works and missing properties raise {@link UnknownPropertyException}
  * - copy() preserves timestamp and properties, while allowing payload updates on the copy
+ * - a frozen message rejects mutations, and its copy() is mutable
+ * - share() keeps the id, is mutable and independent of the original
+ * - serialisation round trip preserves timestamp, id, properties, frozen state
+ *   and the sharing of the payload by the "payload" property
+ * - estimatedSize() is exact for values encoded field by field
  
  *
  * @author Bogdan Styn
@@ -116,6 +132,7 @@ public class MessageTest {
 		MessageI c = m.copy();
 
 		assertEquals(m.getTimeStamp(), c.getTimeStamp());
+		assertNotEquals(m.getId(), ((Message) c).getId());
 		assertEquals(m.getPayload(), c.getPayload());
 		assertEquals("demo", c.getPropertyValue("type"));
 
@@ -124,4 +141,145 @@ public class MessageTest {
 		assertEquals("payload", m.getPayload());
 		assertEquals("other", c.getPayload());
 	}
+
+	@Test
+	public void testShareKeepsIdentity() throws Exception {
+		info("share() returns a mutable copy with the same id, independent of the original.");
+
+		Message m = new Message((Serializable) "payload");
+		m.putProperty("type", "demo");
+		m.freeze();
+
+		Message s = m.share();
+		assertFalse(s.isFrozen());
+		assertEquals(m.getId(), s.getId());
+		assertEquals(m.getTimeStamp(), s.getTimeStamp());
+		assertEquals("demo", s.getPropertyValue("type"));
+
+		s.putProperty("other", 1);
+		s.setPayload("other");
+		assertFalse(m.propertyExists("other"));
+		assertEquals("payload", m.getPayload());
+	}
+
+	@Test
+	public void testFrozenMessageIsReadOnly() throws Exception {
+		info("a frozen message rejects mutations; its copy() is mutable.");
+
+		Message m = new Message((Serializable) "payload");
+		m.putProperty("type", "demo");
+		m.freeze();
+		assertTrue(m.isFrozen());
+
+		try {
+			m.putProperty("other", 1);
+			fail("putProperty on a frozen message must throw");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		try {
+			m.removeProperty("type");
+			fail("removeProperty on a frozen message must throw");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		try {
+			m.setPayload("other");
+			fail("setPayload on a frozen message must throw");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertEquals("demo", m.getPropertyValue("type"));
+		assertEquals("payload", m.getPayload());
+
+		Message c = (Message) m.copy();
+		assertFalse(c.isFrozen());
+		c.putProperty("other", 1);
+		c.setPayload("other");
+		assertFalse(m.propertyExists("other"));
+		assertEquals("payload", m.getPayload());
+	}
+
+	private static byte[] serialize(Object o) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(o);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static Object roundTrip(Object o) throws Exception {
+		byte[] bytes = serialize(o);
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			return in.readObject();
+		}
+	}
+
+	@Test
+	public void testSerializationRoundTrip() throws Exception {
+		info("serialised messages are read back equal, payload shared by the payload property.");
+
+		WindData wind = new WindData(new Position2D(1.5, -2.0), 3.0, 4.0);
+		Message m = new Message(wind);
+		m.putProperty("type", "wind");
+		m.putProperty("payload", wind);
+		m.putProperty("force", 5.0);
+		m.putProperty("stationId", "S1");
+		m.putProperty("count", 7);
+		m.putProperty("big", 1L << 40);
+		m.putProperty("flag", true);
+		m.putProperty("none", null);
+		m.putProperty("at", Instant.ofEpochSecond(12, 34));
+		m.putProperty("other", new int[] { 1, 2 });
+		m.freeze();
+
+		Message r = (Message) roundTrip(m);
+		assertEquals(m.getTimeStamp(), r.getTimeStamp());
+		assertEquals(m.getId(), r.getId());
+		assertTrue(r.isFrozen());
+		assertEquals(m.getPropertyCount(), r.getPropertyCount());
+		WindData w = (WindData) r.getPayload();
+		assertSame(w, r.getPropertyValue("payload"));
+		assertEquals(1.5, ((Position2D) w.getPosition()).getX(), 0.0);
+		assertEquals(4.0, w.yComponent(), 0.0);
+		for (String name : new String[] { "type", "force", "stationId", "count", "big", "flag", "none", "at" }) {
+			assertEquals(name, m.getPropertyValue(name), r.getPropertyValue(name));
+		}
+		assertArrayEquals(new int[] { 1, 2 }, (int[]) r.getPropertyValue("other"));
+
+		MeteoAlert alert = new MeteoAlert(
+			MeteoAlertI.AlertType.STORM, MeteoAlertI.Level.RED,
+			new RegionI[] { new CircularRegion(new Position2D(0.0, 1.0), 2.0) },
+			Instant.ofEpochSecond(100), Duration.ofMinutes(5));
+		Message a = new Message(alert);
+		a.putProperty("alertType", "STORM");
+		Message ra = (Message) roundTrip(a);
+		assertFalse(ra.isFrozen());
+		MeteoAlert rAlert = (MeteoAlert) ra.getPayload();
+		assertEquals(alert.getLevel(), rAlert.getLevel());
+		assertEquals(alert.getAlertType(), rAlert.getAlertType());
+		assertEquals(alert.getDuration(), rAlert.getDuration());
+		assertEquals(2.0, ((CircularRegion) rAlert.getRegions()[0]).getRadius(), 0.0);
+		ra.putProperty("extra", 1);
+	}
+
+	@Test
+	public void testEstimatedSize() throws Exception {
+		info("estimatedSize() follows the serialised size of the message.");
+
+		WindData wind = new WindData(new Position2D(1.5, -2.0), 3.0, 4.0);
+		Message m = new Message(wind);
+		m.putProperty("type", "wind");
+		m.putProperty("payload", wind);
+		int base = serialize(m).length;
+		int baseEstimate = m.estimatedSize();
+		assertTrue(baseEstimate < base);
+
+		m.putProperty("stationId", "S1");
+		m.putProperty("force", 5.0);
+		m.putProperty("count", 7);
+		m.putProperty("at", Instant.ofEpochSecond(12, 34));
+		// stream overheads aside, both grow by the encoded properties.
+		assertEquals(serialize(m).length - base, m.estimatedSize() - baseEstimate);
+	}
 }
@@ -0,0 +1,232 @@
+package fr.sorbonne_u.cps.pubsub.tests;
+
+import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI;
+import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI.PropertiesFilterI;
+import fr.sorbonne_u.cps.pubsub.interfaces.MessageFilterI.PropertyFilterI;
+import fr.sorbonne_u.cps.pubsub.interfaces.MessageI.PropertyI;
+import fr.sorbonne_u.cps.pubsub.messages.Message;
+import fr.sorbonne_u.cps.pubsub.messages.MessageFilter;
+import fr.sorbonne_u.cps.pubsub.messages.filters.ComparableValueFilter;
+import fr.sorbonne_u.cps.pubsub.messages.filters.DistanceWindFilter;
+import fr.sorbonne_u.cps.pubsub.messages.filters.EqualsValueFilter;
+import fr.sorbonne_u.cps.pubsub.messages.filters.PropertyFilter;
+import fr.sorbonne_u.cps.pubsub.messages.matching.SubscriptionIndex;
+import fr.sorbonne_u.cps.pubsub.meteo.impl.Position2D;
+import fr.sorbonne_u.cps.pubsub.meteo.impl.WindData;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the subscription index used by the broker to preselect
+ * subscribers.
+ *
+ * What is being tested:
+ * - the candidates of a message are a superset of the matching subscriptions
+ * - equality-indexed subscriptions are not candidates for other values
+ * - subclassed filters, which may not enforce their constraint, are not indexed
+ * - each subscription is given at most once per message
+ * - range-indexed subscriptions are candidates exactly when their range matches
+ * - distance-indexed subscriptions far from the wind position are not candidates
+ *
+ * @author Bogdan Styn
+ */
+public class SubscriptionIndexTest {
+
+	private static void info(String s) {
+		System.out.println("[SubscriptionIndexTest] " + s);
+	}
+
+	private static MessageFilter filter(PropertyFilterI... pfs) {
+		return new MessageFilter(pfs, new PropertiesFilterI[0], null);
+	}
+
+	/** Index the subscriptions by their rank, as equal filters are equal. */
+	private static SubscriptionIndex<Integer> index(MessageFilterI[] subs) {
+		Integer[] ranks = new Integer[subs.length];
+		for (int i = 0; i < subs.length; i++) {
+			ranks[i] = i;
+		}
+		return new SubscriptionIndex<>(ranks, i -> subs[i]);
+	}
+
+	private static List<Integer> candidates(SubscriptionIndex<Integer> index, Message m) {
+		List<Integer> ret = new ArrayList<>();
+		index.forEachCandidate(m, ret::add);
+		return ret;
+	}
+
+	@Test
+	public void testCandidatesContainAllMatches() throws Exception {
+		info("Every matching subscription is a candidate, whatever its access path.");
+
+		MessageFilterI[] subs = {
+			filter(new PropertyFilter("type", new EqualsValueFilter("wind"))),
+			filter(new PropertyFilter("type", new EqualsValueFilter("alert"))),
+			filter(new PropertyFilter("type", new EqualsValueFilter("wind")),
+				   new PropertyFilter("region", new EqualsValueFilter("north"))),
+			filter(new PropertyFilter("force", ComparableValueFilter.greaterOrEqual(3))),
+			MessageFilter.acceptAll()
+		};
+		SubscriptionIndex<Integer> index = index(subs);
+		assertEquals(subs.length, index.size());
+
+		Message m = new Message("payload");
+		m.putProperty("type", "wind");
+		m.putProperty("region", "north");
+		m.putProperty("force", 5);
+
+		List<Integer> c = candidates(index, m);
+		for (int i = 0; i < subs.length; i++) {
+			if (subs[i].match(m)) {
+				assertTrue(c.contains(i));
+			}
+		}
+		assertFalse(c.contains(1));
+		assertEquals(c.size(), new HashSet<>(c).size());
+	}
+
+	@Test
+	public void testEqualityPreselection() throws Exception {
+		info("Subscriptions indexed under another value are not candidates.");
+
+		MessageFilterI[] subs = new MessageFilterI[100];
+		for (int i = 0; i < subs.length; i++) {
+			subs[i] = filter(new PropertyFilter("station", new EqualsValueFilter("s" + i)));
+		}
+		SubscriptionIndex<Integer> index = index(subs);
+
+		Message m = new Message("payload");
+		m.putProperty("station", "s42");
+		List<Integer> c = candidates(index, m);
+		assertEquals(1, c.size());
+		assertEquals(Integer.valueOf(42), c.get(0));
+
+		Message other = new Message("payload");
+		other.putProperty("unrelated", "s42");
+		assertTrue(candidates(index, other).isEmpty());
+	}
+
+	@Test
+	public void testSubclassedFiltersNotIndexed() throws Exception {
+		info("Filters whose class may override match are always candidates.");
+
+		EqualsValueFilter anyValue = new EqualsValueFilter("s0") {
+			private static final long serialVersionUID = 1L;
+			@Override
+			public boolean match(Serializable value) {
+				return true;
+			}
+		};
+		PropertyFilter anyProperty = new PropertyFilter("station", new EqualsValueFilter("s0")) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			public boolean match(PropertyI p) {
+				return true;
+			}
+		};
+		DistanceWindFilter anyDistance = new DistanceWindFilter(new Position2D(0.0, 0.0), 1.0) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			public boolean match(Serializable value) {
+				return true;
+			}
+		};
+		ComparableValueFilter anyForce = new ComparableValueFilter(
+				ComparableValueFilter.Operator.GE, 100, null) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			public boolean match(Serializable value) {
+				return true;
+			}
+		};
+		MessageFilterI[] subs = {
+			filter(new PropertyFilter("station", anyValue)),
+			filter(anyProperty),
+			filter(new PropertyFilter("wind", anyDistance)),
+			filter(new PropertyFilter("force", anyForce))
+		};
+		SubscriptionIndex<Integer> index = index(subs);
+
+		Message m = new Message("payload");
+		m.putProperty("station", "s1");
+		m.putProperty("wind", new WindData(new Position2D(500.0, 500.0), 1.0, 1.0));
+		m.putProperty("force", 5);
+		List<Integer> c = candidates(index, m);
+		for (int i = 0; i < subs.length; i++) {
+			assertTrue(subs[i].match(m));
+			assertTrue(c.contains(i));
+		}
+	}
+
+	@Test
+	public void testRangePreselection() throws Exception {
+		info("Interval tree candidates are exactly the subscriptions whose range holds the value.");
+
+		Random r = new Random(42);
+		MessageFilterI[] subs = new MessageFilterI[300];
+		for (int i = 0; i < subs.length; i++) {
+			int a = r.nextInt(100);
+			int b = a + r.nextInt(30);
+			ComparableValueFilter vf;
+			switch (i % 3) {
+				case 0:  vf = ComparableValueFilter.greaterOrEqual(a); break;
+				case 1:  vf = ComparableValueFilter.lowerOrEqual(a); break;
+				default: vf = ComparableValueFilter.betweenInclusive(a, b); break;
+			}
+			subs[i] = filter(new PropertyFilter("force", vf));
+		}
+		SubscriptionIndex<Integer> index = index(subs);
+
+		for (int v = -5; v <= 135; v++) {
+			Message m = new Message("payload");
+			m.putProperty("force", v);
+			List<Integer> c = candidates(index, m);
+			assertEquals(c.size(), new HashSet<>(c).size());
+			for (int i = 0; i < subs.length; i++) {
+				assertEquals(subs[i].match(m), c.contains(i));
+			}
+		}
+
+		Message wrongClass = new Message("payload");
+		wrongClass.putProperty("force", 10.0);
+		assertTrue(candidates(index, wrongClass).isEmpty());
+	}
+
+	@Test
+	public void testSpatialPreselection() throws Exception {
+		info("Grid candidates contain every turbine in range and few others.");
+
+		Random r = new Random(7);
+		MessageFilterI[] subs = new MessageFilterI[500];
+		for (int i = 0; i < subs.length; i++) {
+			Position2D p = new Position2D(r.nextDouble() * 1000.0, r.nextDouble() * 1000.0);
+			subs[i] = filter(
+				new PropertyFilter("type", new EqualsValueFilter("wind")),
+				new PropertyFilter("payload", new DistanceWindFilter(p, 10.0 + r.nextDouble() * 20.0)));
+		}
+		SubscriptionIndex<Integer> index = index(subs);
+
+		for (int k = 0; k < 50; k++) {
+			WindData wind = new WindData(
+				new Position2D(r.nextDouble() * 1000.0, r.nextDouble() * 1000.0), 1.0, 1.0);
+			Message m = new Message(wind);
+			m.putProperty("type", "wind");
+			m.putProperty("payload", wind);
+			List<Integer> c = candidates(index, m);
+			assertEquals(c.size(), new HashSet<>(c).size());
+			assertTrue(c.size() < subs.length / 10);
+			for (int i = 0; i < subs.length; i++) {
+				if (subs[i].match(m)) {
+					assertTrue(c.contains(i));
+				}
+			}
+		}
+	}
+}